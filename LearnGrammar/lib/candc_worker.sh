@@ -0,0 +1,4 @@
+# Long-lived C&C process for CandcWorkerPool: reads one sentence per line on stdin, and writes the GRs and tokens line of each as it's parsed.
+# The pool follows each sentence with CandcWorkerPool.SENTINEL, whose tokens line marks the end of the sentence before; so nothing here
+# may drop or reorder lines, but a sentence C&C can't parse may simply have no output.
+sed -u -f ~/bin/candc_tokenizer.sed | stdbuf -oL ~/bin/candc-1.00/bin/candc --models ~/bin/candc-1.00/models 2> /dev/null | grep --line-buffered "^[(<]"
@@ -1,3 +0,0 @@
-#!/bin/bash
-#echo "Command (in script): $1"
-echo "$1" | /mnt/hgfs/practical2/parsers/rasp3/scripts/rasp.sh
@@ -0,0 +1,8 @@
+#!/bin/bash
+# RASP in a single pass, for RaspSyntacticParser: splits and tokenises the input once, writes the tokenised sentences (for their word
+# forms), a "%%" line, and then the parses of those same tokens.
+RASP=/mnt/hgfs/practical2/parsers/rasp3/scripts/rasp.sh
+tokenised=$(rasp_tag=cat rasp_ner=cat rasp_morph=cat rasp_parse=cat $RASP)
+echo "$tokenised"
+echo "%%"
+echo "$tokenised" | rasp_sentence=cat rasp_tokenise=cat $RASP
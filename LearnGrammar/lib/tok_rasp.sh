@@ -1,2 +0,0 @@
-#!/bin/bash
-echo "$1" | rasp_tag=cat rasp_ner=cat rasp_morph=cat rasp_parse=cat /mnt/hgfs/practical2/parsers/rasp3/scripts/rasp.sh
@@ -3,12 +3,14 @@ package uk.ac.cam.dr369.learngrammar.commonality;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
@@ -17,6 +19,7 @@ import uk.ac.cam.dr369.learngrammar.model.Pos;
 import uk.ac.cam.dr369.learngrammar.model.Token;
 import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
 import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.parsing.FeatureFilter;
 import uk.ac.cam.dr369.learngrammar.semantics.VerbFrame;
 import uk.ac.cam.dr369.learngrammar.semantics.WordnetVerbFrame;
 import uk.ac.cam.dr369.learngrammar.util.Utils;
@@ -26,6 +29,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
+import com.google.common.primitives.Ints;
 
 /**
  * Encapsulates what the example sentences have in common.
@@ -74,6 +78,8 @@ public class Commonality {
 	// TODO use something from Guava here? Table?
 	private final Map<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>> verbFrames;
 	private final Map<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>> dependencyStructures;
+	// Labels each common structure needs a sentence to have: tested against the sentence's FeatureFilter before extracting structures.
+	private final Map<FeatureType,Table<FeatureProfile,Integer,List<Set<String>>>> structureKeys;
 	
 	private final List<DependencyStructure> examples;
 	private final List<DependencyStructure> counterExamples;
@@ -83,6 +89,8 @@ public class Commonality {
 		findCommonality(verbFrames, examples, counterExamples);
 		dependencyStructures = new HashMap<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>>();
 		findCommonality(dependencyStructures, examples, counterExamples, FEATURE_PROFILES);
+		structureKeys = new HashMap<FeatureType,Table<FeatureProfile,Integer,List<Set<String>>>>();
+		findStructureKeys(structureKeys, dependencyStructures);
 		this.examples = examples;
 		this.counterExamples = counterExamples;
 	}
@@ -106,6 +114,23 @@ public class Commonality {
 		}
 		prune();
 	}
+	private static void findStructureKeys(Map<FeatureType,Table<FeatureProfile,Integer,List<Set<String>>>> structureKeys,
+			Map<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>> dependencyStructures) {
+		for (FeatureType featureType : dependencyStructures.keySet()) {
+			Table<FeatureProfile,Integer,List<Set<String>>> keys = HashBasedTable.create();
+			for (Map<FeatureProfile, Map<Integer, Set<Twig>>> multiProfileLevelStructs : dependencyStructures.get(featureType).values()) {
+				for (FeatureProfile profile : multiProfileLevelStructs.keySet()) {
+					Map<Integer, Set<Twig>> multiLevelStructs = multiProfileLevelStructs.get(profile);
+					for (int level : multiLevelStructs.keySet()) {
+						for (Twig struct : multiLevelStructs.get(level)) {
+							Utils.establishListInTable(keys, profile, level).add(FeatureFilter.keys(struct.getTokens(), struct.getGrs(), false));
+						}
+					}
+				}
+			}
+			structureKeys.put(featureType, keys);
+		}
+	}
 	private void prune() {
 //		ImmutableMap<FeatureType, Map<Boolean, Map<FeatureProfile, Map<Integer, Set<DirectedPathDs>>>>> m1 = ImmutableMap.copyOf(dependencyStructures);
 		Utils.pruneMultilevelMap(dependencyStructures);
@@ -511,8 +536,52 @@ public class Commonality {
 	}
 	public void findCorpusMatches(Collection<DependencyStructure> corpusDeps,
 			List<ScoredDependencyStructure> similarSentences, List<ScoredDependencyStructure> incorrectSentences) {
+		List<DependencyStructure> corpus = asList(corpusDeps);
+		ScoreSheet sheet = new ScoreSheet(corpus.size());
+		for (int sentenceId = 0; sentenceId < corpus.size(); sentenceId++) {
+			findSimilar(new SentenceFeatures(corpus.get(sentenceId)), sentenceId, sheet);
+		}
+		findCorpusMatches(corpus, sheet, similarSentences, incorrectSentences);
+	}
+	/**
+	 * As {@link #findCorpusMatches(Collection, List, List)} for each of <code>commonalities</code>, but in a single pass over the corpus:
+	 * each sentence's tokens, verb frames and partial structures are extracted once, and tested against every commonality's features.
+	 * 
+	 * @param similarSentences cleared, then given one list per commonality, in the same order. Likewise <code>incorrectSentences</code>.
+	 */
+	public static void findCorpusMatches(List<Commonality> commonalities, Collection<DependencyStructure> corpusDeps,
+			List<List<ScoredDependencyStructure>> similarSentences, List<List<ScoredDependencyStructure>> incorrectSentences) {
+		List<DependencyStructure> corpus = asList(corpusDeps);
+		List<ScoreSheet> sheets = new ArrayList<ScoreSheet>();
+		for (int i = 0; i < commonalities.size(); i++) {
+			sheets.add(new ScoreSheet(corpus.size()));
+		}
+		for (int sentenceId = 0; sentenceId < corpus.size(); sentenceId++) {
+			SentenceFeatures features = new SentenceFeatures(corpus.get(sentenceId));
+			for (int i = 0; i < commonalities.size(); i++) {
+				commonalities.get(i).findSimilar(features, sentenceId, sheets.get(i));
+			}
+		}
+		similarSentences.clear();
+		incorrectSentences.clear();
+		for (int i = 0; i < commonalities.size(); i++) {
+			List<ScoredDependencyStructure> similar = new ArrayList<ScoredDependencyStructure>();
+			List<ScoredDependencyStructure> incorrect = new ArrayList<ScoredDependencyStructure>();
+			commonalities.get(i).findCorpusMatches(corpus, sheets.get(i), similar, incorrect);
+			similarSentences.add(similar);
+			incorrectSentences.add(incorrect);
+		}
+	}
+	private void findCorpusMatches(List<DependencyStructure> corpus, ScoreSheet sheet,
+			List<ScoredDependencyStructure> similarSentences, List<ScoredDependencyStructure> incorrectSentences) {
 		similarSentences.clear();
-		similarSentences.addAll(findSimilar(corpusDeps));
+		for (int sentenceId = 0; sentenceId < corpus.size(); sentenceId++) {
+			if (sheet.scored(sentenceId)) {
+				DependencyStructure ds = corpus.get(sentenceId);
+				// if I'm not going to use verbosity penalties any more, stop calculating them.
+				similarSentences.add(new ScoredDependencyStructure(ds, sheet, sentenceId, 1d/*verbosityPenalty(ds, examples)*/));
+			}
+		}
 		Collections.sort(similarSentences);
 		Collections.reverse(similarSentences);
 		incorrectSentences.clear();
@@ -520,7 +589,7 @@ public class Commonality {
 		
 		boolean fragments = false;
 		for (DependencyStructure counterExample : counterExamples) {
-			if (isFragment(counterExample, 2)) {
+			if (counterExample.isFragment(2)) {
 				fragments = true;
 				break;
 			}
@@ -536,7 +605,7 @@ public class Commonality {
 //					int i = 3; i++;
 //				}
 				
-				if (isFragment(ds, 5))
+				if (ds.isFragment(5))
 					it.remove();
 			}
 		}
@@ -559,9 +628,26 @@ public class Commonality {
 		for (ScoredDependencyStructure sds : incorrectSentencesSds) {
 			if ((sds.score() - bottomScore < (topIncorrectScore - bottomScore) * INCORRECT_QUALITY_THRESHOLD) || incorrectSentences.size() >= maxWrong)
 				break;
-			incorrectSentences.add(sds.getSentence() + "\t\t\t*" + sds.score() + "*" + sds.scores());
+			incorrectSentences.add(asString(sds));
+		}
+	}
+	/**
+	 * The <code>limit</code> corpus sentences most similar to the examples, as {@link #findCorpusMatchesAsStrings} gives correct
+	 * answers, followed by the examples themselves. For when no incorrect answers are wanted: only the sentences that might make the
+	 * top <code>limit</code> are scored - see {@link #findTopSimilar(Collection, int)}.
+	 */
+	public void findTopCorpusMatchesAsStrings(Collection<DependencyStructure> corpusDeps, int limit, List<String> similarSentences) {
+		similarSentences.clear();
+		for (ScoredDependencyStructure sds : findTopSimilar(corpusDeps, limit)) {
+			similarSentences.add(asString(sds));
+		}
+		for (DependencyStructure ds : examples) {
+			similarSentences.add(ds.getSentence());
 		}
 	}
+	private static String asString(ScoredDependencyStructure sds) {
+		return sds.getSentence() + "\t\t\t*" + sds.score() + "*" + sds.scores();
+	}
 	public interface ScoreThresholder {
 		void apply(List<ScoredDependencyStructure> similarSentencesSds, List<String> similarSentences);
 	}
@@ -572,181 +658,248 @@ public class Commonality {
 			for (ScoredDependencyStructure sds : similarSentencesSds) {
 				if (sds.score() < topCorrectScore * CORRECT_QUALITY_THRESHOLD)
 					break;
-				similarSentences.add(sds.getSentence() + "\t\t\t*" + sds.score() + "*" + sds.scores());
+				similarSentences.add(asString(sds));
 			}
 		}
 	}
 	
-	private List<ScoredDependencyStructure> findSimilar(Collection<DependencyStructure> corpusDeps) {
-		// Get scores based off 'strong' features: intersection(examples) - union(ctrExamples)
-		Map<DependencyStructure, List<Score>> similarSentences = findSimilarPrivt(
-				corpusDeps, Utils.establishMap(verbFrames, FeatureType.STRONG),
-				Utils.establishMap(dependencyStructures, FeatureType.STRONG), FeatureType.STRONG);
-		// Get scores based off 'weak' features: intersection(examples)
-		Map<DependencyStructure, List<Score>> similarSentencesWeaklyRated = findSimilarPrivt(
-				corpusDeps, Utils.establishMap(verbFrames, FeatureType.WEAK),
-				Utils.establishMap(dependencyStructures, FeatureType.WEAK), FeatureType.WEAK);
+	/**
+	 * Finds the <code>limit</code> corpus sentences most similar to the examples, highest scoring first. Unlike
+	 * {@link #findCorpusMatches(Collection, List, List)}, sentences that can't make the top <code>limit</code> - judged by an upper bound
+	 * on their score - are skipped before any structures are extracted from them.
+	 * 
+	 * @throws IllegalArgumentException if <code>limit</code> is negative.
+	 */
+	public List<ScoredDependencyStructure> findTopSimilar(Collection<DependencyStructure> corpusDeps, int limit) {
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit: "+limit);
+		if (limit == 0)
+			return new ArrayList<ScoredDependencyStructure>();
+		final List<DependencyStructure> corpus = asList(corpusDeps);
+		final ScoreSheet sheet = new ScoreSheet(corpus.size());
+		ScoreBound scoreBound = new ScoreBound(verbFrames, dependencyStructures, VERB_FRAME_SCORE);
+		final int[] bounds = new int[corpus.size()];
+		List<Integer> byBound = new ArrayList<Integer>(corpus.size());
+		for (int sentenceId = 0; sentenceId < corpus.size(); sentenceId++) {
+			bounds[sentenceId] = scoreBound.bound(corpus.get(sentenceId));
+			byBound.add(sentenceId);
+		}
+		Collections.sort(byBound, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return bounds[b] - bounds[a];
+			}
+		});
+		
+		// Lowest of the top scores so far at the head.
+		PriorityQueue<Integer> top = new PriorityQueue<Integer>(limit + 1, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(sheet.total(a), sheet.total(b));
+			}
+		});
+		for (int sentenceId : byBound) {
+			if (top.size() == limit && bounds[sentenceId] <= sheet.total(top.peek()))
+				break; // sorted by bound, so no later sentence can do better
+			findSimilar(new SentenceFeatures(corpus.get(sentenceId)), sentenceId, sheet);
+			if (sheet.scored(sentenceId)) {
+				top.add(sentenceId);
+				if (top.size() > limit)
+					top.poll();
+			}
+		}
 		
 		List<ScoredDependencyStructure> scoredDs = new ArrayList<ScoredDependencyStructure>();
-		Set<DependencyStructure> dses = Utils.union(similarSentences.keySet(), similarSentencesWeaklyRated.keySet());
-		for (DependencyStructure ds : dses) {
-			List<Score> scores = new ArrayList<Score>();
-			List<Score> scores1 = similarSentences.get(ds);
-			List<Score> scores2 = similarSentencesWeaklyRated.get(ds);
-			if (scores1 != null)
-				scores.addAll(scores1);
-			if (scores2 != null)
-				scores.addAll(scores2);
-			// if I'm not going to use verbosity penalties any more, stop calculating them.
-			scoredDs.add(new ScoredDependencyStructure(ds.getGrs(), ds.getTokens(), scores, 1d/*verbosityPenalty(ds, examples)*/));
+		for (int sentenceId : top) {
+			scoredDs.add(new ScoredDependencyStructure(corpus.get(sentenceId), sheet, sentenceId, 1d));
 		}
+		Collections.sort(scoredDs);
+		Collections.reverse(scoredDs);
 		return scoredDs;
 	}
-	private void findSimilarByStructure(Collection<DependencyStructure> corpusDeps, Map<DependencyStructure, List<Score>> similarSentences,
+	/** Sentences are identified by their position in the corpus, so that scores can be tallied in primitive arrays. */
+	private static List<DependencyStructure> asList(Collection<DependencyStructure> corpusDeps) {
+		return corpusDeps instanceof List ?
+				(List<DependencyStructure>) corpusDeps : new ArrayList<DependencyStructure>(corpusDeps);
+	}
+	private void findSimilar(SentenceFeatures candidate, int sentenceId, ScoreSheet sheet) {
+		// Get scores based off 'strong' features: intersection(examples) - union(ctrExamples)
+		findSimilarPrivt(candidate, sentenceId, sheet, Utils.establishMap(verbFrames, FeatureType.STRONG),
+				Utils.establishMap(dependencyStructures, FeatureType.STRONG), FeatureType.STRONG);
+		// Get scores based off 'weak' features: intersection(examples)
+		findSimilarPrivt(candidate, sentenceId, sheet, Utils.establishMap(verbFrames, FeatureType.WEAK),
+				Utils.establishMap(dependencyStructures, FeatureType.WEAK), FeatureType.WEAK);
+	}
+	private void findSimilarByStructure(SentenceFeatures candidate, int sentenceId, ScoreSheet sheet,
 			Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>> commonMultiProfileLevelStructures, FeatureType featureType) {
-		for (DependencyStructure candidateDs : corpusDeps) { // candidate from corpus
-			
-			// All structures observed in a sentence.
-			Map<Integer,Set<Twig>> observed = new HashMap<Integer,Set<Twig>>();
-			// All sentences that have been assigned a score.
-			Map<Integer,Set<Twig>> scored = new HashMap<Integer,Set<Twig>>();
-			
+		// All structures observed in a sentence.
+		Map<Integer,Set<Twig>> observed = new HashMap<Integer,Set<Twig>>();
+		// All sentences that have been assigned a score.
+		Map<Integer,Set<Twig>> scored = new HashMap<Integer,Set<Twig>>();
+		
 //			if (candidateDs.getSentence().equals("Become a Lobbyist")) {
 //				int ie = 8; ie++;
 //			}
 
-			Map<FeatureProfile, Map<Integer, Set<Twig>>> commonMultiProfileLevelNegStructs =
-				commonMultiProfileLevelStructures.get(false);
-			Map<FeatureProfile, Map<Integer, Set<Twig>>> commonPosMultiProfileLevelStructs =
-				commonMultiProfileLevelStructures.get(true);
-			Set<FeatureProfile> profiles = Utils.unionKeys(commonPosMultiProfileLevelStructs, commonMultiProfileLevelNegStructs);
+		Map<FeatureProfile, Map<Integer, Set<Twig>>> commonMultiProfileLevelNegStructs =
+			commonMultiProfileLevelStructures.get(false);
+		Map<FeatureProfile, Map<Integer, Set<Twig>>> commonPosMultiProfileLevelStructs =
+			commonMultiProfileLevelStructures.get(true);
+		Set<FeatureProfile> profiles = Utils.unionKeys(commonPosMultiProfileLevelStructs, commonMultiProfileLevelNegStructs);
+		
+		// Only extract structures at heights where some common structure might be found, judging by the sentence's labels. Common
+		// structures can't subsume anything at other heights: positives there can't score, and negatives are certainly absent.
+		FeatureFilter filter = candidate.sentence().getFeatureFilter();
+		Table<FeatureProfile, Integer, List<Set<String>>> keys = structureKeys.get(featureType);
+		Map<FeatureProfile, Set<Integer>> profileIndices = new HashMap<FeatureProfile, Set<Integer>>();
+		for (FeatureProfile profile : profiles) {
+			Set<Integer> indices = Sets.newHashSet();
+			Map<Integer, Set<Twig>> a = commonPosMultiProfileLevelStructs == null ?
+					null : commonPosMultiProfileLevelStructs.get(profile);
+			Map<Integer, Set<Twig>> b = commonMultiProfileLevelNegStructs == null ? 
+					null : commonMultiProfileLevelNegStructs.get(profile);
+			if (a != null)
+				indices.addAll(a.keySet());
+			if (b != null)
+				indices.addAll(b.keySet());
+			for (Iterator<Integer> it = indices.iterator(); it.hasNext();) {
+				if (!mightContainAny(filter, keys == null ? null : keys.get(profile, it.next())))
+					it.remove();
+			}
+			profileIndices.put(profile, indices);
+		}
+		
+		for (Token candidateToken : candidate.tokens()) {
 			
-			Table<FeatureProfile, Integer, Map<Token, List<Twig>>> partialStructures = HashBasedTable.create();
+			// 1. Get partial structures required for checking both positive AND negative structs.
 			
-			for (Token candidateToken : candidateDs.getTokens()) {
-				
-				// 1. Get partial structures required for checking both positive AND negative structs.
-				
-				for (FeatureProfile profile : profiles) {
-					Set<Integer> indices = Sets.newHashSet();
-					Map<Integer, Set<Twig>> a = commonPosMultiProfileLevelStructs == null ?
-							null : commonPosMultiProfileLevelStructs.get(profile);
-					Map<Integer, Set<Twig>> b = commonMultiProfileLevelNegStructs == null ? 
-							null : commonMultiProfileLevelNegStructs.get(profile);
-					if (a != null)
-						indices.addAll(a.keySet());
-					if (b != null)
-						indices.addAll(b.keySet());
-					for (int index : indices) {
-						List<Twig> partialStructs = Twig.getPartialStructures(candidateToken, profile, index, false);
-						Utils.establishMapInTable(partialStructures, profile, index).put(candidateToken, partialStructs);
-						for (Twig struct : partialStructs) {
-							Utils.establishSet(observed, index).add(struct);
-						}
+			for (FeatureProfile profile : profiles) {
+				for (int index : profileIndices.get(profile)) {
+					for (Twig struct : candidate.partialStructures(candidateToken, profile, index)) {
+						Utils.establishSet(observed, index).add(struct);
 					}
 				}
+			}
+			
+			// 2. Check positive structs.
+			
+			if (commonPosMultiProfileLevelStructs == null)
+				continue;
+			
+			for (FeatureProfile profile : commonPosMultiProfileLevelStructs.keySet()) {
+				Map<Integer,Set<Twig>> commonMultilevelStructs = commonPosMultiProfileLevelStructs.get(profile);
 				
-				// 2. Check positive structs.
-				
-				if (commonPosMultiProfileLevelStructs == null)
-					continue;
-				
-				for (FeatureProfile profile : commonPosMultiProfileLevelStructs.keySet()) {
-					Map<Integer,Set<Twig>> commonMultilevelStructs = commonPosMultiProfileLevelStructs.get(profile);
+				for (int depth : commonMultilevelStructs.keySet()) { // GR hierarchy depth
 					
-					for (int depth : commonMultilevelStructs.keySet()) { // GR hierarchy depth
-						
 //						if (candidateDs.getSentence().equals("I'm going to hold on.") &&
 //								profile.toString().equals("lemmas, POS and GR types") &&
 //								featureType.equals(FeatureType.STRONG) &&
 //								depth == 3) {
 //							int feaojfea = 3; feaojfea++;
 //						}
-						
-						Set<Twig> commonStructures = commonMultilevelStructs.get(depth);
-						if (commonStructures != null) {
-							for (Twig candidateStructure : partialStructures.get(profile, depth).get(candidateToken)) {
-								
-								for (Twig commonStructure : commonStructures) {
-									if (commonStructure.subsumes(candidateStructure) &&
-											(!scored.containsKey(depth) || !scored.get(depth).contains(commonStructure))) {
+					
+					Set<Twig> commonStructures = commonMultilevelStructs.get(depth);
+					if (commonStructures != null && profileIndices.get(profile).contains(depth)) {
+						for (Twig candidateStructure : candidate.partialStructures(candidateToken, profile, depth)) {
+							
+							for (Twig commonStructure : commonStructures) {
+								if (commonStructure.subsumes(candidateStructure) &&
+										(!scored.containsKey(depth) || !scored.get(depth).contains(commonStructure))) {
+									Integer feature = sheet.featureId(commonStructure);
+									if (feature == null) {
 										String desc = depth+"-level structure ("+profile.featureDescription()+")";
-										Utils.establishList(similarSentences, candidateDs).add(
-												new Score(profile.score(commonStructure), desc,
-												commonStructure, candidateStructure, featureType));
-										Utils.establishSet(scored, depth).add(commonStructure);
+										feature = sheet.register(commonStructure, profile.score(commonStructure), desc,
+												commonStructure, null, featureType);
 									}
+									sheet.add(sentenceId, feature, candidateStructure);
+									Utils.establishSet(scored, depth).add(commonStructure);
 								}
 							}
 						}
 					}
 				}
 			}
-			if (commonMultiProfileLevelNegStructs != null) {
-				for (FeatureProfile profile : commonMultiProfileLevelNegStructs.keySet()) {
-					Map<Integer, Set<Twig>> commonMultiLevelNegStructs = commonMultiProfileLevelNegStructs.get(profile);
-					
-				    for (int i : commonMultiLevelNegStructs.keySet()) {
-				    	Set<Twig> commonNegStructs = commonMultiLevelNegStructs.get(i);
+		}
+		if (commonMultiProfileLevelNegStructs != null) {
+			for (FeatureProfile profile : commonMultiProfileLevelNegStructs.keySet()) {
+				Map<Integer, Set<Twig>> commonMultiLevelNegStructs = commonMultiProfileLevelNegStructs.get(profile);
+				
+			    for (int i : commonMultiLevelNegStructs.keySet()) {
+			    	Set<Twig> commonNegStructs = commonMultiLevelNegStructs.get(i);
 	                    
-				    	negStructLoop:for (Twig commonNegStruct : commonNegStructs) {
+			    	negStructLoop:for (Twig commonNegStruct : commonNegStructs) {
 	                    	Set<Twig> obsLvlI = observed.get(i);
 	                    	
 	                    	if (obsLvlI != null) {
-					    		for (Twig observedStruct : obsLvlI) {
-					    			if (commonNegStruct.subsumes(observedStruct)) {
-				                        continue negStructLoop;
-					    			}
-					    		}
+				    		for (Twig observedStruct : obsLvlI) {
+				    			if (commonNegStruct.subsumes(observedStruct)) {
+			                        continue negStructLoop;
+				    			}
+				    		}
 	                    	}
                         	Utils.establishSet(observed, i).add(commonNegStruct); // dirty hack to avoid scoring multiple times without extra list
-                        	String desc = "Absence of "+i+"-level structure";
-                            Utils.establishList(similarSentences, candidateDs).add(
-                            		new Score(profile.score(commonNegStruct), desc, commonNegStruct, featureType));
+                        	Integer feature = sheet.featureId(commonNegStruct);
+                        	if (feature == null) {
+                        		String desc = "Absence of "+i+"-level structure";
+                        		feature = sheet.register(commonNegStruct, profile.score(commonNegStruct), desc, null, commonNegStruct, featureType);
+                        	}
+                            sheet.add(sentenceId, feature);
 	                    }
-				    }
-				}
+			    }
 			}
 		}
 	}
-	private Map<DependencyStructure, List<Score>> findSimilarPrivt(Collection<DependencyStructure> corpusDeps,
+	/** False if <code>filter</code> rules out every one of the structures whose keys are given. */
+	private static boolean mightContainAny(FeatureFilter filter, List<Set<String>> structureKeys) {
+		if (structureKeys == null)
+			return true; // unknown structures
+		for (Set<String> keys : structureKeys) {
+			if (filter.mightContainAll(keys))
+				return true;
+		}
+		return false;
+	}
+	private void findSimilarPrivt(SentenceFeatures candidate, int sentenceId, ScoreSheet sheet,
 			Map<Boolean,Map<VerbFrame, List<Token>>> verbFrames,
 			Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>> commonMultiProfileLevelStructures,
 			FeatureType featureType) {
-		Map<DependencyStructure, List<Score>> similarSentences = new HashMap<DependencyStructure, List<Score>>();
-		for (DependencyStructure candidateDs : corpusDeps) { // candidate from corpus
-			
-			// Duplicate matches are not counted - e.g. five instances of "somebody ___s" can only be counted once within a single sentence.
-			Set<VerbFrame> vfScored = new HashSet<VerbFrame>();
-			
-			// Used for negative matches: list everything we observe, then check intersection of each category with common elements of that category.
-			Set<VerbFrame> vfsObserved = new HashSet<VerbFrame>();
-			
-			for (Token candidateToken : candidateDs.getTokens()) {
-				if (candidateToken.isVerb()) {
-					Set<VerbFrame> candidateVerbFrames = WordnetVerbFrame.getAcceptingFrames(candidateToken);
-					Set<VerbFrame> commonVerbFrames = verbFrames.get(true).keySet();
-					Set<VerbFrame> intersection = Utils.intersection(candidateVerbFrames, commonVerbFrames);
-					intersection.removeAll(vfScored);
-					if (intersection.size() > 0) { // max one such score tallied up, even if multiple VFs match
-						vfScored.addAll(intersection);
-						Utils.establishList(similarSentences, candidateDs).add(new Score(VERB_FRAME_SCORE, "verb frames", intersection, featureType));
-					}
-					vfsObserved.addAll(candidateVerbFrames);
+		// Duplicate matches are not counted - e.g. five instances of "somebody ___s" can only be counted once within a single sentence.
+		Set<VerbFrame> vfScored = new HashSet<VerbFrame>();
+		
+		// Used for negative matches: list everything we observe, then check intersection of each category with common elements of that category.
+		Set<VerbFrame> vfsObserved = new HashSet<VerbFrame>();
+		
+		for (Token candidateToken : candidate.tokens()) {
+			if (candidateToken.isVerb()) {
+				Set<VerbFrame> candidateVerbFrames = candidate.acceptingFrames(candidateToken);
+				Map<VerbFrame, List<Token>> commonVfs = verbFrames.get(true);
+				Set<VerbFrame> commonVerbFrames = commonVfs.keySet();
+				Set<VerbFrame> intersection = Utils.intersection(candidateVerbFrames, commonVerbFrames);
+				intersection.removeAll(vfScored);
+				if (intersection.size() > 0) { // max one such score tallied up, even if multiple VFs match
+					vfScored.addAll(intersection);
+					// Verb frame features are keyed on the common frames; the matched frames are recorded with each score.
+					Integer vfFeature = sheet.featureId(commonVfs);
+					if (vfFeature == null)
+						vfFeature = sheet.register(commonVfs, VERB_FRAME_SCORE, "verb frames", null, null, featureType);
+					sheet.add(sentenceId, vfFeature, intersection);
 				}
+				vfsObserved.addAll(candidateVerbFrames);
 			}
-			if (verbFrames.get(false) != null) {
-				for (VerbFrame negVf : verbFrames.get(false).keySet()) {
-					if (!vfsObserved.contains(negVf)) {
-						Utils.establishList(similarSentences, candidateDs).add(
-								new Score(VERB_FRAME_SCORE, "Absence of verb frame", negVf, featureType));
-						break; // scored a max of once per sentence
-					}
+		}
+		if (verbFrames.get(false) != null) {
+			for (VerbFrame negVf : verbFrames.get(false).keySet()) {
+				if (!vfsObserved.contains(negVf)) {
+					Map<VerbFrame, List<Token>> negVfs = verbFrames.get(false);
+					Integer negVfFeature = sheet.featureId(negVfs);
+					if (negVfFeature == null)
+						negVfFeature = sheet.register(negVfs, VERB_FRAME_SCORE, "Absence of verb frame", null, null, featureType);
+					sheet.add(sentenceId, negVfFeature, negVf);
+					break; // scored a max of once per sentence
 				}
 			}
 		}
-		findSimilarByStructure(corpusDeps, similarSentences, commonMultiProfileLevelStructures, featureType);
-		return similarSentences;
+		findSimilarByStructure(candidate, sentenceId, sheet, commonMultiProfileLevelStructures, featureType);
 	}
 
 //	private double verbosityPenalty(DependencyStructure candidate, List<DependencyStructure> references) {
@@ -769,92 +922,56 @@ public class Commonality {
 	/** Input must be PRE-SORTED, with highest scorers FIRST. */
 	private List<ScoredDependencyStructure> findCoherentWrongAnswers(List<ScoredDependencyStructure> sortedSentences) {
 		List<ScoredDependencyStructure> out = new ArrayList<ScoredDependencyStructure>();
+		if (sortedSentences.isEmpty())
+			return out;
+		final ScoreSheet sheet = sortedSentences.get(0).sheet();
+		ScoreSheet wrongAnswerSheet = sheet.derive();
 		
 		// Identify small contributors to overall score - sentences with lots of these get high scores.
-		Set<Score> acceptScores = new HashSet<Score>();
+		Set<Integer> acceptFeatures = new HashSet<Integer>();
 		// ...And exclude sentences with the 'big hitter' features.
-		Set<Score> rejectScores = new HashSet<Score>();
+		Set<Integer> rejectFeatures = new HashSet<Integer>();
 		
-		// Populate acceptScores and rejectScores.
+		// Populate acceptFeatures and rejectFeatures.
 		int maxIndex = sortedSentences.size() > 100 ? 10 : sortedSentences.size() / 5;
 		for (ListIterator<ScoredDependencyStructure> it = sortedSentences.listIterator(); it.nextIndex() < maxIndex;) {
 			ScoredDependencyStructure sentence = it.next();
 			double totalScore = sentence.score();
-			List<Score> sortedScores = new ArrayList<Score>(sentence.scores());
-			Collections.sort(sortedScores);
+			List<Integer> sortedFeatures = new ArrayList<Integer>(Ints.asList(sheet.features(sentence.sentenceId())));
+			Collections.sort(sortedFeatures, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return sheet.feature(a).compareTo(sheet.feature(b));
+				}
+			});
 			double scoreAccountedFor = 0d;
 			double threshold = totalScore * SEMICOHERENT_THRESHOLD;
-			for (Score score : sortedScores) {
-				scoreAccountedFor += score.value();
+			for (int feature : sortedFeatures) {
+				scoreAccountedFor += sheet.feature(feature).value();
 				if (scoreAccountedFor < threshold)
-					rejectScores.add(score);
+					rejectFeatures.add(feature);
 				else
-					acceptScores.add(score);
+					acceptFeatures.add(feature);
 			}
 		}
-		acceptScores.removeAll(rejectScores); // eliminate overlap
+		acceptFeatures.removeAll(rejectFeatures); // eliminate overlap
 		
 		// Rank sentences according to these small contributions.
 		for (ScoredDependencyStructure sentence : sortedSentences) {
-			Set<Score> accepts = Utils.intersection(sentence.scores(), acceptScores);
-			List<Score> rejects = Lists.newArrayList(Utils.intersection(sentence.scores(), rejectScores));
-			for (ListIterator<Score> it = rejects.listIterator(); it.hasNext();) {
-				Score score = it.next();
-				it.set(new Score(-score.value(), score.description(), score.actual(), score.type())); // negate score
+			int sentenceId = sentence.sentenceId();
+			for (int feature : sheet.features(sentenceId)) {
+				if (acceptFeatures.contains(feature))
+					wrongAnswerSheet.add(sentenceId, feature);
+				else if (rejectFeatures.contains(feature))
+					wrongAnswerSheet.add(sentenceId, feature, -sheet.feature(feature).value()); // negate score
 			}
-			out.add(new ScoredDependencyStructure(sentence.getGrs(), sentence.getTokens(),
-					new ArrayList<Score>(Utils.union(accepts, rejects)), sentence.getVerbosityPenalty()));
+			out.add(new ScoredDependencyStructure(sentence, wrongAnswerSheet, sentenceId, sentence.getVerbosityPenalty()));
 		}
 		Collections.sort(out);
 		Collections.reverse(out);
 		return out;
 	}
 	
-	private static final boolean isFragment(DependencyStructure ds, int minLength) {
-		String sentence = ds.getSentence();
-		List<Token> tokens = ds.getTokens();
-		
-		if (sentence.split(" ").length < minLength) // Very short sentences more likely to be fragments. Note we're splitting on the DEtokenised string.
-			return true;
-		if (sentence.substring(0, 1).matches("[^A-Z]")) // first word should start with initial capital
-			return true;
-		if (sentence.substring(sentence.length()-1).matches("[^.!?]")) // should end with sentence-terminal punctuation
-			return true;
-		
-		boolean verbFound = false;
-		boolean containsLowercaseInitial = false;
-		int nFigures = 0;
-		for (Token tok : tokens) {
-			if (tok.getWord().matches(
-					"([0-9]+/[0-9]+" + // fraction
-					"|" +
-					"yen" +
-					"|" +
-					"dollars" +
-					"|" +
-					"cents" +
-					"|" +
-					"francs" +
-					"|" +
-					"([A-Z]*[£$%]))")) { // stock quotes are syntactically boring.
-				nFigures++;
-			}
-			else if (tok.isVerb()) {
-				verbFound = true;
-//				if (containsLowercaseInitial)
-//					break;
-			}
-			if (tok.getWord().substring(0, 1).matches("[a-z]")) {
-				containsLowercaseInitial = true;
-//				if (verbFound)
-//					break;
-			}
-		}
-		if (!verbFound || !containsLowercaseInitial || nFigures > 1)
-			return true;
-		return false;
-	}
-	
 	// Not actually needed/desirable: we're only comparing the 'expected' bit of each score, and so subsumption doesn't come into it as the
 	// scores will have been pruned at this point.
 //	private static List<Score> intersectSubsumingScores(Set<Score> toBePruneds, Set<Score> references) {
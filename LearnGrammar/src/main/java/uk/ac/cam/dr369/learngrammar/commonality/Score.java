@@ -49,8 +49,8 @@ public class Score implements Comparable<Score> {
 	@Override
 	public String toString() {
 		return /*"\n"+*/description+" ("
-			+(expected == null ? "" : "expected: " + expected + "; actual: ")
-			+(actual == null ? "" : actual + "; ")
+			+(expected == null ? "" : "expected: " + expected + "; ")
+			+(actual == null ? "" : (expected == null ? "" : "actual: ") + actual + "; ")
 			+"strength: "+type.toString().toLowerCase()+"; points: "+DECIMAL_FORMAT.format(value)+")";
 	}
 	@Override
@@ -0,0 +1,86 @@
+/**
+ * 
+ */
+package uk.ac.cam.dr369.learngrammar.commonality;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import uk.ac.cam.dr369.learngrammar.commonality.Commonality.FeatureType;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.parsing.FeatureFilter;
+import uk.ac.cam.dr369.learngrammar.semantics.VerbFrame;
+
+/**
+ * Upper bound on the score a Commonality can give a sentence, worked out from the sentence's FeatureFilter - without extracting any
+ * structures from it. A positive structure can't match a sentence the filter rules its labels out of. Negative features can be had by
+ * any sentence. Positive verb frames are scored once for each verb that adds a common frame not already scored, so at most once per
+ * verb in the sentence and once per common frame.
+ * 
+ * @author duncan.roberts
+ */
+public class ScoreBound {
+	private final int unconditional;
+	// By feature type: points for each verb scored for common verb frames, and how many common frames there are.
+	private final int[] verbFramePoints = new int[FeatureType.values().length];
+	private final int[] verbFrameCounts = new int[FeatureType.values().length];
+	private final Map<Set<String>, Integer> structures; // keyed on the FeatureFilter keys required: lemmas, supertags, POS tags, GR types
+	
+	public ScoreBound(Map<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>> verbFrames,
+			Map<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>> dependencyStructures, int verbFrameScore) {
+		int unconditional = 0;
+		structures = new HashMap<Set<String>, Integer>();
+		for (FeatureType featureType : FeatureType.values()) {
+			int vfPoints = verbFrameScore * featureType.multiplier();
+			Map<Boolean, Map<VerbFrame, List<Token>>> vfs = verbFrames.get(featureType);
+			if (vfs != null) {
+				if (vfs.get(true) != null && !vfs.get(true).isEmpty()) {
+					verbFramePoints[featureType.ordinal()] = vfPoints;
+					verbFrameCounts[featureType.ordinal()] = vfs.get(true).size();
+				}
+				if (vfs.get(false) != null && !vfs.get(false).isEmpty())
+					unconditional += vfPoints;
+			}
+			
+			Map<Boolean, Map<FeatureProfile, Map<Integer, Set<Twig>>>> structs = dependencyStructures.get(featureType);
+			if (structs == null)
+				continue;
+			for (Entry<Boolean, Map<FeatureProfile, Map<Integer, Set<Twig>>>> polarity : structs.entrySet()) {
+				for (Entry<FeatureProfile, Map<Integer, Set<Twig>>> profileStructs : polarity.getValue().entrySet()) {
+					FeatureProfile profile = profileStructs.getKey();
+					for (Set<Twig> levelStructs : profileStructs.getValue().values()) {
+						for (Twig struct : levelStructs) {
+							// Points are truncated score by score, as in ScoreSheet.
+							int points = (int) (profile.score(struct) * featureType.multiplier());
+							if (polarity.getKey()) {
+								Set<String> required = FeatureFilter.keys(struct.getTokens(), struct.getGrs(), false);
+								Integer p = structures.get(required);
+								structures.put(required, p == null ? points : p + points);
+							}
+							else
+								unconditional += points;
+						}
+					}
+				}
+			}
+		}
+		this.unconditional = unconditional;
+	}
+	public int bound(DependencyStructure sentence) {
+		int verbs = sentence.getVerbCount();
+		int bound = unconditional;
+		for (int i = 0; i < verbFramePoints.length; i++) {
+			bound += Math.min(verbs, verbFrameCounts[i]) * verbFramePoints[i];
+		}
+		FeatureFilter filter = sentence.getFeatureFilter();
+		for (Entry<Set<String>, Integer> e : structures.entrySet()) {
+			if (filter.mightContainAll(e.getKey()))
+				bound += e.getValue();
+		}
+		return bound;
+	}
+}
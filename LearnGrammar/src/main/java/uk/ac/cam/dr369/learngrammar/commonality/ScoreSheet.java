@@ -0,0 +1,151 @@
+/**
+ *
+ */
+package uk.ac.cam.dr369.learngrammar.commonality;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cam.dr369.learngrammar.commonality.Commonality.FeatureType;
+
+/**
+ * Running score totals for every sentence in a corpus, indexed by the sentence's position in the corpus. Rather than allocating a Score
+ * (and its description) for every feature matched in every sentence, each distinct feature is registered once per query, and a match is
+ * recorded as a (feature id, weight, matched structure) entry against the sentence. Score instances are only built, by {@link #explain(int)}, for the
+ * sentences that are actually shown to the user.
+ *
+ * @author duncan.roberts
+ */
+public class ScoreSheet {
+	private static final int NO_ENTRY = -1;
+	private static final int INITIAL_ENTRIES = 256;
+
+	// Registered features. Prototype scores carry description, expected structure and feature type - but usually no 'actual'.
+	private final List<Score> features;
+	private final List<Double> featureValues; // unweighted
+	private final Map<Object, Integer> featureIds;
+
+	// Per sentence: total points, and head of a linked list of entries.
+	private final double[] totals;
+	private final int[] firstEntry;
+
+	// Per entry: feature id, unweighted value (as passed to the Score constructor), 'actual' (null for the feature's own) and the next
+	// entry for the same sentence.
+	private int[] entryFeature;
+	private double[] entryValue;
+	private Object[] entryActual;
+	private int[] entryNext;
+	private int entries;
+
+	public ScoreSheet(int sentences) {
+		this(sentences, new ArrayList<Score>(), new ArrayList<Double>(), new IdentityHashMap<Object, Integer>());
+	}
+	private ScoreSheet(int sentences, List<Score> features, List<Double> featureValues, Map<Object, Integer> featureIds) {
+		this.features = features;
+		this.featureValues = featureValues;
+		this.featureIds = featureIds;
+		totals = new double[sentences];
+		firstEntry = new int[sentences];
+		Arrays.fill(firstEntry, NO_ENTRY);
+		entryFeature = new int[INITIAL_ENTRIES];
+		entryValue = new double[INITIAL_ENTRIES];
+		entryActual = new Object[INITIAL_ENTRIES];
+		entryNext = new int[INITIAL_ENTRIES];
+	}
+	/** A new, empty sheet for the same corpus, sharing this sheet's registered features. */
+	public ScoreSheet derive() {
+		return new ScoreSheet(totals.length, features, featureValues, featureIds);
+	}
+	/**
+	 * @return id of the feature previously registered against <code>key</code> (compared by identity), or null if there is none.
+	 */
+	public Integer featureId(Object key) {
+		return featureIds.get(key);
+	}
+	/**
+	 * Registers a feature. Arguments are as for the Score constructor, and apply to every score later recorded against the returned id.
+	 * <code>actual</code> should only be given where it's the same for every sentence; otherwise give it with each score recorded.
+	 *
+	 * @param key Identity used to look the feature up again with {@link #featureId(Object)}. May be null if no lookup is needed.
+	 */
+	public int register(Object key, double value, String description, Object expected, Object actual, FeatureType type) {
+		int id = features.size();
+		features.add(new Score(value, description, expected, actual, type));
+		featureValues.add(value);
+		if (key != null)
+			featureIds.put(key, id);
+		return id;
+	}
+	public Score feature(int featureId) {
+		return features.get(featureId);
+	}
+	/** Records the feature's own (unweighted) value against a sentence. */
+	public void add(int sentence, int featureId) {
+		add(sentence, featureId, featureValues.get(featureId), null);
+	}
+	/** Records the feature's own (unweighted) value against a sentence, along with what the sentence matched. */
+	public void add(int sentence, int featureId, Object actual) {
+		add(sentence, featureId, featureValues.get(featureId), actual);
+	}
+	/**
+	 * Records a score against a sentence. <code>value</code> is unweighted, as with the Score constructor: the feature type multiplier
+	 * is applied here.
+	 */
+	public void add(int sentence, int featureId, double value) {
+		add(sentence, featureId, value, null);
+	}
+	private void add(int sentence, int featureId, double value, Object actual) {
+		if (entries == entryFeature.length) {
+			int capacity = entries * 2;
+			entryFeature = Arrays.copyOf(entryFeature, capacity);
+			entryValue = Arrays.copyOf(entryValue, capacity);
+			entryActual = Arrays.copyOf(entryActual, capacity);
+			entryNext = Arrays.copyOf(entryNext, capacity);
+		}
+		entryFeature[entries] = featureId;
+		entryValue[entries] = value;
+		entryActual[entries] = actual;
+		entryNext[entries] = firstEntry[sentence];
+		firstEntry[sentence] = entries++;
+		// Points are truncated score by score, as ScoredDependencyStructure has always done.
+		totals[sentence] += (int) (value * features.get(featureId).type().multiplier());
+	}
+	public boolean scored(int sentence) {
+		return firstEntry[sentence] != NO_ENTRY;
+	}
+	public double total(int sentence) {
+		return totals[sentence];
+	}
+	public int sentences() {
+		return totals.length;
+	}
+	/** Distinct features recorded against a sentence. */
+	public int[] features(int sentence) {
+		int[] ids = new int[8];
+		int n = 0;
+		entryLoop:for (int e = firstEntry[sentence]; e != NO_ENTRY; e = entryNext[e]) {
+			int id = entryFeature[e];
+			for (int i = 0; i < n; i++) {
+				if (ids[i] == id)
+					continue entryLoop;
+			}
+			if (n == ids.length)
+				ids = Arrays.copyOf(ids, n * 2);
+			ids[n++] = id;
+		}
+		return Arrays.copyOf(ids, n);
+	}
+	/** Builds the human-readable scores for a sentence. */
+	public List<Score> explain(int sentence) {
+		List<Score> scores = new ArrayList<Score>();
+		for (int e = firstEntry[sentence]; e != NO_ENTRY; e = entryNext[e]) {
+			Score prototype = features.get(entryFeature[e]);
+			Object actual = entryActual[e] == null ? prototype.actual() : entryActual[e];
+			scores.add(new Score(entryValue[e], prototype.description(), prototype.expected(), actual, prototype.type()));
+		}
+		return scores;
+	}
+}
@@ -3,6 +3,8 @@
  */
 package uk.ac.cam.dr369.learngrammar.commonality;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.List;
 import java.util.SortedSet;
 
@@ -20,13 +22,17 @@ import com.google.common.collect.ImmutableSortedSet;
  */
 public class ScoredDependencyStructure extends DependencyStructure implements Comparable<DependencyStructure> {
 	private static final long serialVersionUID = 1399484231232570153L;
-	private final SortedSet<Score> scores;
+	private SortedSet<Score> scores; // built lazily where a ScoreSheet is used
+	private final transient ScoreSheet sheet;
+	private final int sentenceId;
 	private final double verbosityPenalty;
 	private final double score;
 	
 	public ScoredDependencyStructure(List<GrammaticalRelation> grs, List<Token> tokens, List<Score> scores, double verbosityPenalty) {
 		super(grs, tokens, false);
 		this.scores = ImmutableSortedSet.copyOf(scores);
+		this.sheet = null;
+		this.sentenceId = -1;
 		this.verbosityPenalty = verbosityPenalty;
 		
 		int i = 0;
@@ -35,13 +41,36 @@ public class ScoredDependencyStructure extends DependencyStructure implements Co
 		}
 		this.score = i;
 	}
+	/**
+	 * Refers to the corpus sentence's GRs and tokens, rather than holding a copy. Scores are taken from <code>sheet</code>; the
+	 * individual Score instances are only built if {@link #scores()} is called.
+	 */
+	public ScoredDependencyStructure(DependencyStructure sentence, ScoreSheet sheet, int sentenceId, double verbosityPenalty) {
+		super(sentence);
+		this.sheet = sheet;
+		this.sentenceId = sentenceId;
+		this.verbosityPenalty = verbosityPenalty;
+		this.score = sheet.total(sentenceId);
+	}
 	public double score() {
 		return score;
 //		return (1/verbosityPenalty) * ((double) i); // no longer needed as sentences limited to 13 words max
 	}
 	public SortedSet<Score> scores() {
+		if (scores == null)
+			scores = ImmutableSortedSet.copyOf(sheet.explain(sentenceId));
 		return scores;
 	}
+	ScoreSheet sheet() {
+		return sheet;
+	}
+	int sentenceId() {
+		return sentenceId;
+	}
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		scores(); // sheet isn't serialised
+		out.defaultWriteObject();
+	}
 	public double getVerbosityPenalty() {
 		return verbosityPenalty;
 	}
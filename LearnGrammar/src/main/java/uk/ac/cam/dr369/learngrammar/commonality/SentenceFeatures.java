@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package uk.ac.cam.dr369.learngrammar.commonality;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.semantics.VerbFrame;
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetVerbFrame;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+/**
+ * What's been extracted from a corpus sentence while scoring it: its tokens, their verb frames and partial structures. Each is extracted
+ * on first use, and kept so that the sentence can be scored against many Commonalities (and both feature types) without repeating the
+ * work.
+ * 
+ * @author duncan.roberts
+ */
+public class SentenceFeatures {
+	private final DependencyStructure sentence;
+	private final List<Token> tokens;
+	private final Map<Token, Set<VerbFrame>> verbFrames = new IdentityHashMap<Token, Set<VerbFrame>>();
+	private final Table<FeatureProfile, Integer, Map<Token, List<Twig>>> partialStructures = HashBasedTable.create();
+	
+	public SentenceFeatures(DependencyStructure sentence) {
+		this.sentence = sentence;
+		tokens = sentence.getTokensView();
+	}
+	public DependencyStructure sentence() {
+		return sentence;
+	}
+	/** Read only: shared by every Commonality scoring this sentence. */
+	public List<Token> tokens() {
+		return tokens;
+	}
+	/** @param verb one of {@link #tokens()}. */
+	public Set<VerbFrame> acceptingFrames(Token verb) {
+		Set<VerbFrame> frames = verbFrames.get(verb);
+		if (frames == null) {
+			int position = 0;
+			while (position < tokens.size() && tokens.get(position) != verb)
+				position++;
+			frames = position < tokens.size() ? sentence.getAcceptingFrames(position) : // kept with the sentence, across queries
+				WordnetVerbFrame.getAcceptingFrames(verb);
+			verbFrames.put(verb, frames);
+		}
+		return frames;
+	}
+	/** @param token one of {@link #tokens()}. */
+	public List<Twig> partialStructures(Token token, FeatureProfile profile, int height) {
+		Map<Token, List<Twig>> byToken = partialStructures.get(profile, height);
+		if (byToken == null) {
+			byToken = new IdentityHashMap<Token, List<Twig>>();
+			partialStructures.put(profile, height, byToken);
+		}
+		List<Twig> structs = byToken.get(token);
+		if (structs == null) {
+			structs = Twig.getPartialStructures(token, profile, height, false);
+			byToken.put(token, structs);
+		}
+		return structs;
+	}
+}
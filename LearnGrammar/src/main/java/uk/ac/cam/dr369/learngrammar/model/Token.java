@@ -30,8 +30,6 @@ import uk.ac.cam.dr369.learngrammar.util.Utils.VeryCloneable;
 public class Token implements VeryCloneable<Token>, Comparable<Token>, Serializable {
 	private static final long serialVersionUID = -1303112268519064221L;
 
-	private static WordnetSemanticAnalyser semanticAnalyser;
-	
 	private final String lemma;
 	private final String suffix;
 	private final int index;
@@ -61,9 +59,7 @@ public class Token implements VeryCloneable<Token>, Comparable<Token>, Serializa
 		this.supertag = supertag;
 		this.namedEntityClass = ner;
 		attached = false;
-		if (semanticAnalyser == null)
-			semanticAnalyser = WordnetSemanticAnalyser.getInstance();
-		this.lemma = lemma == null && index >= 0 ? semanticAnalyser.lemmatise(this).get(0) : lemma; // index<0: special null token
+		this.lemma = lemma == null && index >= 0 ? WordnetSemanticAnalyser.getInstance().lemmatise(this).get(0) : lemma; // index<0: special null token
 		this.verbFrame = verbFrame;
 	}
 	private Token(String lemma, String suffix, int index, Pos posTag, String supertag, String word, boolean attached) {
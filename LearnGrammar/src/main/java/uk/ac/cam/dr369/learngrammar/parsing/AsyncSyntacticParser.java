@@ -0,0 +1,114 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Runs parses on background threads, so that the caller can get on with other work - say, scoring the sentences parsed so far - while
+ * the parser is busy. At most <code>concurrency</code> parses run at once, and at most <code>queueSize</code> more wait their turn;
+ * beyond that, submitting blocks until a parse finishes. Works with any SyntacticParser safe to call from several threads at once:
+ * {@link CandcSyntacticParser} (webservice or local workers) and {@link RaspSyntacticParser} are. The blocking methods are passed
+ * straight through.
+ *
+ * @author duncan.roberts
+ */
+public class AsyncSyntacticParser implements SyntacticParser, Closeable {
+	private final SyntacticParser parser;
+	private final ListeningExecutorService executor;
+	private final Semaphore permits;
+
+	public AsyncSyntacticParser(SyntacticParser parser, int concurrency, int queueSize) {
+		this.parser = parser;
+		this.executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "parser-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+		permits = new Semaphore(concurrency + queueSize);
+	}
+
+	/** Parses a single sentence in the background. Blocks while the queue is full. */
+	public ListenableFuture<DependencyStructure> toDependencyStructureAsync(final String sentence) throws InterruptedIOException {
+		return submit(new Callable<DependencyStructure>() {
+			@Override
+			public DependencyStructure call() throws IOException {
+				return parser.toDependencyStructure(sentence);
+			}
+		});
+	}
+
+	/** Parses several sentences, as one request, in the background. Blocks while the queue is full. */
+	public ListenableFuture<List<DependencyStructure>> toDependencyStructuresAsync(final String sentences) throws InterruptedIOException {
+		return submit(new Callable<List<DependencyStructure>>() {
+			@Override
+			public List<DependencyStructure> call() throws IOException {
+				return parser.toDependencyStructures(sentences);
+			}
+		});
+	}
+
+	private <T> ListenableFuture<T> submit(Callable<T> parse) throws InterruptedIOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to queue a parse");
+		}
+		ListenableFuture<T> result;
+		try {
+			result = executor.submit(parse);
+		} catch (RuntimeException e) { // rejected: shut down
+			permits.release();
+			throw e;
+		}
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				permits.release();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return result;
+	}
+
+	@Override
+	public List<DependencyStructure> toDependencyStructures(String sentences) throws IOException {
+		return parser.toDependencyStructures(sentences);
+	}
+
+	@Override
+	public DependencyStructure toDependencyStructure(String sentence) throws IOException {
+		return parser.toDependencyStructure(sentence);
+	}
+
+	@Override
+	public boolean useCorpus() {
+		return parser.useCorpus();
+	}
+
+	@Override
+	public Collection<DependencyStructure> getCorpus() throws IOException {
+		return parser.getCorpus();
+	}
+
+	/** Lets queued parses finish, but accepts no more. */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,149 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.ac.cam.dr369.learngrammar.util.PropertiesFacade;
+import uk.ac.cam.dr369.learngrammar.util.Utils;
+
+/**
+ * Measures parser throughput and latency: sends sentences to a parser from a number of threads at once, timing each parse. Run from
+ * the command line, it starts a {@link CandcReplayServer} and drives CandcSyntacticParser against it, which needs
+ * candc.webservice=true and candc.webservice.url pointing at localhost - the server is started on that URL's port - and is best run
+ * with candc.corpus.enable=false, so the corpus isn't loading alongside. The parse cache is turned off, so that every parse goes to
+ * the server. Webservice parses aren't hedged unless the system property {@link CandcSyntacticParser#HEDGE_WEBSERVICE_PROPERTY} is
+ * true.
+ *
+ * @author duncan.roberts
+ */
+public class CandcLoadGenerator {
+	private CandcLoadGenerator() {}
+
+	/** Outcome of a run. */
+	public static class Result {
+		private final int requests;
+		private final int failures;
+		private final int unparsed;
+		private final long elapsedNanos;
+		private final long[] latencyNanos; // sorted
+
+		private Result(int requests, int failures, int unparsed, long elapsedNanos, long[] latencyNanos) {
+			this.requests = requests;
+			this.failures = failures;
+			this.unparsed = unparsed;
+			this.elapsedNanos = elapsedNanos;
+			this.latencyNanos = latencyNanos;
+			Arrays.sort(this.latencyNanos);
+		}
+
+		public int getRequests() {
+			return requests;
+		}
+		/** Parses that threw an exception. */
+		public int getFailures() {
+			return failures;
+		}
+		/** Parses that gave no sentence. */
+		public int getUnparsed() {
+			return unparsed;
+		}
+		/** Parses a second, failures included. */
+		public double getThroughput() {
+			return requests / (elapsedNanos / 1e9);
+		}
+		/** @param percentile 0 to 100, for the least and greatest latencies. */
+		public double getLatencyMillis(double percentile) {
+			if (latencyNanos.length == 0)
+				return 0;
+			int rank = (int) Math.ceil(percentile / 100 * latencyNanos.length);
+			return latencyNanos[Math.min(latencyNanos.length - 1, Math.max(0, rank - 1))] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d parses in %.1fs: %.1f/s, %d failed, %d unparsed. " +
+					"Latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, max %.1f",
+					requests, elapsedNanos / 1e9, getThroughput(), failures, unparsed,
+					getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(100));
+		}
+	}
+
+	/**
+	 * Parses <code>requests</code> sentences, taking <code>sentences</code> in turn, from <code>concurrency</code> threads.
+	 */
+	public static Result run(final SyntacticParser parser, final List<String> sentences, final int requests, int concurrency)
+			throws InterruptedException {
+		final long[] latencyNanos = new long[requests];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicInteger unparsed = new AtomicInteger();
+		ExecutorService threads = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		for (int t = 0; t < concurrency; t++) {
+			threads.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i; (i = next.getAndIncrement()) < requests;) {
+						long parseStart = System.nanoTime();
+						try {
+							if (parser.toDependencyStructure(sentences.get(i % sentences.size())) == null)
+								unparsed.incrementAndGet();
+						} catch (Exception e) {
+							failures.incrementAndGet();
+						}
+						latencyNanos[i] = System.nanoTime() - parseStart;
+					}
+				}
+			});
+		}
+		threads.shutdown();
+		threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		return new Result(requests, failures.get(), unparsed.get(), System.nanoTime() - start, latencyNanos);
+	}
+
+	/**
+	 * Arguments: .gr file, requests, concurrency, server latency (ms), server jitter (ms), server error rate.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: CandcLoadGenerator <file.gr> <requests> <concurrency> [latencyMillis] [jitterMillis] [errorRate]");
+			System.exit(1);
+		}
+		System.setProperty(ParseCache.DISABLE_PROPERTY, "true");
+		PropertiesFacade prop = PropertiesFacade.getInstance();
+		URL url = prop.getCandcWebserviceUrl();
+		if (!prop.useCandcWebservice() || !url.getHost().equals("localhost") || url.getPort() < 0)
+			throw new IllegalStateException("Set candc.webservice=true and candc.webservice.url=" +
+					"http://localhost:<port>/demo2.cgi?printer=grs&sentence= to load test.");
+
+		CandcReplayServer server = new CandcReplayServer(new File(args[0]),
+				args.length > 3 ? Long.parseLong(args[3]) : 0,
+				args.length > 4 ? Long.parseLong(args[4]) : 0,
+				args.length > 5 ? Double.parseDouble(args[5]) : 0, 0);
+		server.start(url.getPort());
+		try {
+			List<String> sentences = new ArrayList<String>();
+			for (String sentence : server.getSentences()) {
+				sentences.add(Utils.detokenise(sentence));
+			}
+			int requests = Integer.parseInt(args[1]);
+			int concurrency = Integer.parseInt(args[2]);
+			CandcSyntacticParser parser = CandcSyntacticParser.getInstance();
+			run(parser, sentences, Math.min(requests, concurrency * 10), concurrency); // warm up
+			Result result = run(parser, sentences, requests, concurrency);
+			System.out.println(result);
+			System.out.println("Hedging: " + parser.getHedgeStats());
+			System.out.println("Server: " + server.getRequestCount() + " requests, " + server.getErrorCount() + " errors injected.");
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for the C&amp;C webservice (demo2.cgi), so parser throughput can be measured without the remote server. Answers the same
+ * <code>?printer=grs&amp;sentence=</code> requests - one sentence, or several a line each - with C&amp;C's recorded output for them
+ * from a .gr corpus file. Sentences are matched ignoring whitespace, so however they were tokenised; those not in the corpus get no
+ * output, as if C&amp;C couldn't parse them. Each response can be delayed, and a proportion answered with a server error instead.
+ *
+ * @author duncan.roberts
+ */
+public class CandcReplayServer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CandcReplayServer.class);
+	private static final String PATH = "/demo2.cgi";
+
+	private final Map<String, String> outputs = new HashMap<String, String>();
+	private final List<String> sentences = new ArrayList<String>();
+	private final long latencyMillis;
+	private final long jitterMillis;
+	private final double errorRate;
+	private final Random random;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param latencyMillis least time to take over each response.
+	 * @param jitterMillis most extra time, chosen at random, to take over each response.
+	 * @param errorRate proportion of requests, chosen at random, answered with HTTP 500.
+	 */
+	public CandcReplayServer(File grFile, long latencyMillis, long jitterMillis, double errorRate, long seed) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.jitterMillis = jitterMillis;
+		this.errorRate = errorRate;
+		this.random = new Random(seed);
+		load(grFile);
+		LOGGER.info("Replaying {} sentences from {}.", outputs.size(), grFile);
+	}
+
+	/** Reads the GRs and <code>&lt;c&gt;</code> line of each sentence, as in CandcSyntacticParser's corpus loading. */
+	private void load(File grFile) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(grFile), Charsets.UTF_8));
+		try {
+			StringBuilder output = new StringBuilder();
+			for (String line; (line = in.readLine()) != null;) {
+				if (line.startsWith("(")) {
+					output.append(line);
+					output.append('\n');
+				}
+				else if (line.startsWith("<c> ")) {
+					output.append(line);
+					output.append('\n');
+					StringBuilder words = new StringBuilder();
+					for (String token : line.substring("<c> ".length()).split(" ")) {
+						if (words.length() > 0)
+							words.append(' ');
+						int bar = token.indexOf('|');
+						words.append(bar < 0 ? token : token.substring(0, bar));
+					}
+					String sentence = words.toString();
+					if (outputs.put(key(sentence), output.toString()) == null)
+						sentences.add(sentence);
+					output = new StringBuilder();
+				}
+				else if (line.length() == 0) {
+					output = new StringBuilder(); // GRs without a <c> line
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/** Starts serving on <code>port</code>; 0 for any free port. */
+	public synchronized void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "candc-replay-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				answer(exchange);
+			}
+		});
+		server.start();
+		LOGGER.info("C&C replay server listening at {}", getUrl());
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/** The value for candc.webservice.url that points the parser here. */
+	public synchronized String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + PATH + "?printer=grs&sentence=";
+	}
+
+	/** The corpus's sentences, tokenised, in order. */
+	public List<String> getSentences() {
+		return Collections.unmodifiableList(sentences);
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	private void answer(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		long delay;
+		boolean fail;
+		synchronized (random) {
+			delay = latencyMillis + (jitterMillis > 0 ? (long) (random.nextDouble() * jitterMillis) : 0);
+			fail = random.nextDouble() < errorRate;
+		}
+		try {
+			if (delay > 0)
+				Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (fail) {
+			errors.incrementAndGet();
+			respond(exchange, 500, "Injected error\n");
+			return;
+		}
+		String sentenceParam = parameter(exchange.getRequestURI().getRawQuery(), "sentence");
+		StringBuilder body = new StringBuilder();
+		if (sentenceParam != null) {
+			for (String sentence : sentenceParam.split("\n")) {
+				String output = outputs.get(key(sentence));
+				if (output != null) {
+					body.append(output);
+					body.append('\n'); // blank line between sentences
+				}
+			}
+		}
+		respond(exchange, 200, body.toString());
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(Charsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static String parameter(String rawQuery, String name) throws IOException {
+		if (rawQuery == null)
+			return null;
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0 && pair.substring(0, eq).equals(name))
+				return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+		}
+		return null;
+	}
+
+	/** Sentences match whatever the spacing of their tokens. */
+	private static String key(String sentence) {
+		StringBuilder key = new StringBuilder(sentence.length());
+		for (int i = 0; i < sentence.length(); i++) {
+			char c = sentence.charAt(i);
+			if (!Character.isWhitespace(c))
+				key.append(c);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Serves until killed.
+	 * Arguments: .gr file, port, latency (ms), jitter (ms), error rate.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: CandcReplayServer <file.gr> <port> [latencyMillis] [jitterMillis] [errorRate]");
+			System.exit(1);
+		}
+		CandcReplayServer server = new CandcReplayServer(new File(args[0]),
+				args.length > 2 ? Long.parseLong(args[2]) : 0,
+				args.length > 3 ? Long.parseLong(args[3]) : 0,
+				args.length > 4 ? Double.parseDouble(args[4]) : 0, System.currentTimeMillis());
+		server.start(Integer.parseInt(args[1]));
+		System.out.println("Set candc.webservice.url=" + server.getUrl());
+	}
+}
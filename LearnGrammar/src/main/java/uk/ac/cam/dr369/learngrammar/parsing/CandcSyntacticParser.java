@@ -20,6 +20,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipFile;
@@ -34,9 +35,13 @@ import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.Subtype;
 import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.TokenSubtype;
 import uk.ac.cam.dr369.learngrammar.model.NamedEntityClass;
 import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetSemanticAnalyser;
+import uk.ac.cam.dr369.learngrammar.util.HedgedCaller;
 import uk.ac.cam.dr369.learngrammar.util.PropertiesFacade;
 import uk.ac.cam.dr369.learngrammar.util.Utils;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 
 /**
@@ -56,18 +61,51 @@ public class CandcSyntacticParser implements SyntacticParser {
 	//                                                         (TYPE________    SUBTYPE___________________ HEAD___________ DEPENDENT______    INITIAL______  )
 	private static final Pattern GR_REGEX = Pattern.compile("\\(+([a-z0-9]+)(?: ([^ _]+_[0-9]+|_|[a-z]+))? ([^ _]+_[0-9]+) ([^ _]+_[0-9]+)(?: ([^ _)]+|_))?\\)");
 	
-	private Collection<DependencyStructure> corpusDeps;
+	private volatile Collection<DependencyStructure> corpusDeps;
 	
-	private PropertiesFacade prop = PropertiesFacade.getInstance();
+	private final PropertiesFacade prop = PropertiesFacade.getInstance();
 
-	private Future<Collection<DependencyStructure>> corpusLoadFuture;
+	private final Future<Collection<DependencyStructure>> corpusLoadFuture;
 	
-	private static CandcSyntacticParser instance;
+	private static final int CANDC_WORKERS = 2; // each holds its own copy of the models
+	private static final int CANDC_WORKER_TIMEOUT_SECONDS = 60; // allows for the models loading on first use
+	
+	// Local C&C processes, started on the first local parse.
+	private final Supplier<CandcWorkerPool> workerPool = Suppliers.memoize(new Supplier<CandcWorkerPool>() {
+		@Override
+		public CandcWorkerPool get() {
+			return new CandcWorkerPool("./candc_worker.sh", CANDC_WORKERS, CANDC_WORKER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+	});
+	
+	private final ParseCache parseCache = ParseCache.getInstance();
+	
+	/** System property turning off hedging of local parses: a parse not back within the hedge delay is sent to another worker too. */
+	public static final String HEDGE_DISABLE_PROPERTY = "learngrammar.candc.hedge.disable";
+	/**
+	 * System property turning on hedging of webservice parses. Off by default: the second request goes to the same server, adding to
+	 * its load just when it's slow.
+	 */
+	public static final String HEDGE_WEBSERVICE_PROPERTY = "learngrammar.candc.hedge.webservice";
+	/** System property: percentile of recent parse times, 0 to 100, after which a parse is hedged. */
+	public static final String HEDGE_PERCENTILE_PROPERTY = "learngrammar.candc.hedge.percentile";
+	/** System property: least time, in milliseconds, to wait before hedging a parse. */
+	public static final String HEDGE_MIN_DELAY_PROPERTY = "learngrammar.candc.hedge.mindelay";
+	/** System property: time, in milliseconds, to wait before hedging a parse while there are too few parse times to go on. */
+	public static final String HEDGE_INITIAL_DELAY_PROPERTY = "learngrammar.candc.hedge.initialdelay";
+	private static final int HEDGE_WINDOW = 500;
+	private final boolean hedgeLocal = !Boolean.getBoolean(HEDGE_DISABLE_PROPERTY);
+	private final boolean hedgeWebservice = Boolean.getBoolean(HEDGE_WEBSERVICE_PROPERTY);
+	private final HedgedCaller hedger = new HedgedCaller(Integer.getInteger(HEDGE_PERCENTILE_PROPERTY, 95),
+			Long.getLong(HEDGE_MIN_DELAY_PROPERTY, 50), Long.getLong(HEDGE_INITIAL_DELAY_PROPERTY, 2000), HEDGE_WINDOW);
+	
+	/** Initialised by the JVM on first use of getInstance(), so the parser (and its corpus load) is only ever started once. */
+	private static final class InstanceHolder {
+		static final CandcSyntacticParser INSTANCE = new CandcSyntacticParser();
+	}
 	
 	public static CandcSyntacticParser getInstance() {
-		if (instance == null)
-			instance = new CandcSyntacticParser();
-		return instance;
+		return InstanceHolder.INSTANCE;
 	}
 	
 	private CandcSyntacticParser() {
@@ -78,33 +116,116 @@ public class CandcSyntacticParser implements SyntacticParser {
 				public Collection<DependencyStructure> call() throws Exception {
 					long start = new Date().getTime();
 					File corpusFile = prop.getCorpus();
-					Collection<DependencyStructure> corpusDeps = loadCorpus(corpusFile, prop.getMaxCorpusLines());
-					LOGGER.info("{} sentences loaded from corpus file {}.", corpusDeps.size(), corpusFile);
+					Integer maxSentences = prop.getMaxCorpusLines();
+					Collection<DependencyStructure> corpusDeps = null;
+					if (CorpusSnapshot.isUpToDate(corpusFile)) {
+						try {
+							corpusDeps = CorpusSnapshot.read(corpusFile, maxSentences);
+						} catch (IOException e) {
+							LOGGER.warn("Unable to read corpus snapshot; loading corpus afresh.", e);
+						}
+					}
+					if (corpusDeps == null) {
+						// Every corpus token is lemmatised, so wait for WordNet to be in memory rather than have each lookup go to disk.
+						WordnetSemanticAnalyser.getInstance().awaitLoaded();
+						corpusDeps = loadCorpus(corpusFile, maxSentences);
+						LOGGER.info("{} sentences loaded from corpus file {}.", corpusDeps.size(), corpusFile);
+						try {
+							CorpusSnapshot.write(corpusFile, corpusDeps, maxSentences); // also builds everything worked out on first query
+						} catch (IOException e) {
+							LOGGER.warn("Unable to write corpus snapshot.", e);
+							for (DependencyStructure ds : corpusDeps) {
+								ds.warm(); // build now, rather than on the first query
+							}
+						}
+					}
 					long end = new Date().getTime();
 					LOGGER.info("Took {}s to load corpus.", (int) ((end-start)/1000));
 					return corpusDeps;
 				}
 			});
 		}
+		else {
+			corpusLoadFuture = null;
+		}
 	}
 
 	public DependencyStructure toDependencyStructure(String sentence) throws IOException {
 		sentence = Utils.asciiify(sentence);
 		
-		String tokenised = Utils.tokenise(sentence);
-		String output = prop.useCandcWebservice() ?
-				Utils.callWebservice(prop.getCandcWebserviceUrl().toString(), tokenised) :
-				Utils.runScript("./candc.sh", sentence);
-		return getDependencyStructure(output);
+		// Cached on exactly what C&C is given: the tokenised sentence for the webservice, the sentence itself for a local worker.
+		boolean webservice = prop.useCandcWebservice();
+		String parser = webservice ? "candc " + prop.getCandcWebserviceUrl() : "candc local";
+		String input = webservice ? Utils.tokenise(sentence) : sentence;
+		DependencyStructure ds = parseCache.get(parser, input);
+		if (ds == null) {
+			ds = getDependencyStructure(parse(webservice ? null : workerPool.get(), input));
+			parseCache.put(parser, input, ds);
+		}
+		return ds;
+	}
+
+	/**
+	 * C&amp;C's output for one sentence: from a local worker of <code>pool</code>, or from the webservice if it's null. Hedged if so
+	 * configured. The slower of two hedged parses is abandoned rather than stopped: its worker still parses the sentence, and a
+	 * webservice request runs until it's answered or times out.
+	 */
+	private String parse(CandcWorkerPool pool, String input) throws IOException {
+		if (pool == null ? !hedgeWebservice : !hedgeLocal || pool.size() < 2)
+			return pool == null ? Utils.callWebservice(prop.getCandcWebserviceUrl().toString(), input) : pool.parse(input);
+		int worker = pool == null ? 0 : pool.pickWorker();
+		return hedger.call(parseCall(pool, input, worker), parseCall(pool, input, worker + 1));
+	}
+
+	private Callable<String> parseCall(final CandcWorkerPool pool, final String input, final int worker) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws IOException {
+				return pool == null ? Utils.callWebservice(prop.getCandcWebserviceUrl().toString(), input) : pool.parse(input, worker);
+			}
+		};
 	}
 
+	/**
+	 * C&amp;C's output for one sentence, as it would be in a .gr corpus file - empty if the sentence doesn't parse. Not cached.
+	 */
+	public String toCandcOutput(String sentence) throws IOException {
+		sentence = Utils.asciiify(sentence);
+		boolean webservice = prop.useCandcWebservice();
+		return parse(webservice ? null : workerPool.get(), webservice ? Utils.tokenise(sentence) : sentence);
+	}
+
+	/** How often a slow parse has been sent again, and how often the second request answered first. */
+	public HedgedCaller.Stats getHedgeStats() {
+		return hedger.getStats();
+	}
+
+	/**
+	 * Parses all the sentences in one go: a single webservice request, or a single write to a local C&amp;C worker. C&amp;C takes one
+	 * sentence per line. Sentences that don't parse are left out.
+	 */
 	public List<DependencyStructure> toDependencyStructures(String sentences) throws IOException {
 		List<String> lines = Utils.tokeniseSentences(sentences.replace('\n', ' ').replaceAll(" +", " "));
 		List<DependencyStructure> dses = new ArrayList<DependencyStructure>();
-		for (String line : lines) {
-			DependencyStructure ds = toDependencyStructure(line);
-			if (ds != null)
-				dses.add(ds);
+		if (prop.useCandcWebservice()) {
+			StringBuilder tokenised = new StringBuilder();
+			for (String line : lines) {
+				tokenised.append(Utils.tokenise(Utils.asciiify(line)));
+				tokenised.append('\n');
+			}
+			String output = Utils.callWebservice(prop.getCandcWebserviceUrl().toString(), tokenised.toString());
+			getDependencyStructures(output, null, dses); // blank lines separate the sentences
+		}
+		else {
+			List<String> asciiLines = new ArrayList<String>(lines.size());
+			for (String line : lines) {
+				asciiLines.add(Utils.asciiify(line));
+			}
+			for (String output : workerPool.get().parseAll(asciiLines)) {
+				DependencyStructure ds = getDependencyStructure(output);
+				if (ds != null)
+					dses.add(ds);
+			}
 		}
 		return dses;
 	}
@@ -232,7 +353,8 @@ public class CandcSyntacticParser implements SyntacticParser {
 		return dses;
 	}
 	
-	private static DependencyStructure getDependencyStructure(String output) {
+	/** The sentence in C&amp;C output for one sentence, as from {@link #toCandcOutput(String)}; null if there isn't one. */
+	public static DependencyStructure getDependencyStructure(String output) {
 		Collection<DependencyStructure> dses = getDependencyStructures(output);
 		if (dses.size() > 1)
 			throw new IllegalArgumentException("output should contain only one sentence.");
@@ -241,11 +363,16 @@ public class CandcSyntacticParser implements SyntacticParser {
 		return dses.iterator().next();
 	}
 	
-	private static Collection<DependencyStructure> getDependencyStructures(String output) {
+	/** The sentences in C&amp;C output, as in a .gr corpus file: GR lines and <code>&lt;c&gt;</code> line, blank lines between. */
+	public static Collection<DependencyStructure> getDependencyStructures(String output) {
 		return getDependencyStructures(output, null);
 	}
 	private static Collection<DependencyStructure> getDependencyStructures(String output, Integer maxSentences) {
-		Collection<DependencyStructure> dses = new HashSet<DependencyStructure>();
+		return getDependencyStructures(output, maxSentences, new HashSet<DependencyStructure>());
+	}
+	/** Adds the sentences in <code>output</code> to <code>dses</code>, in order. */
+	private static Collection<DependencyStructure> getDependencyStructures(String output, Integer maxSentences,
+			Collection<DependencyStructure> dses) {
 		String[] lines = output.split("\n");
 		String tokensStr = null;
 		StringBuilder grStr = new StringBuilder();
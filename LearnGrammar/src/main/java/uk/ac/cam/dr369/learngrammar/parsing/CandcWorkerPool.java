@@ -0,0 +1,259 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Pool of long-lived C&amp;C processes, each of which loads its models once and then parses sentence after sentence. Sentences are
+ * written to a worker's stdin one per line, and its output is read back by a thread per worker: GR lines, terminated by the
+ * <code>&lt;c&gt;</code> tokens line. Several sentences can be in flight on one worker at once; C&amp;C answers them in order.
+ * <p>
+ * C&amp;C writes nothing at all for a sentence it can't parse, so output isn't matched to sentences by counting tokens lines. Instead
+ * each sentence is followed by a {@link #SENTINEL} sentence, and the sentence's output is whatever comes before the sentinel's tokens
+ * line - empty, if it had none. A worker that exits, or that doesn't answer in time, is killed - failing everything it had in flight -
+ * and started afresh on next use. *nix only.
+ *
+ * @author duncan.roberts
+ */
+public class CandcWorkerPool implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CandcWorkerPool.class);
+	/** Parsed after every sentence to mark the end of its output: short, certain to parse, and starting with an unlikely word. */
+	public static final String SENTINEL = "Candcworkerpoolsentinel stops .";
+	private static final String SENTINEL_TOKENS = "<c> " + SENTINEL.substring(0, SENTINEL.indexOf(' '));
+
+	private final String script;
+	private final long timeoutMillis;
+	private final Worker[] workers;
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * Workers are started on first use.
+	 *
+	 * @param script run with bash for each worker; see candc_worker.sh.
+	 * @param timeout longest to wait for a sentence's parse, including the time queued behind others on the same worker.
+	 */
+	public CandcWorkerPool(String script, int size, long timeout, TimeUnit unit) {
+		this.script = script;
+		this.timeoutMillis = unit.toMillis(timeout);
+		workers = new Worker[size];
+		for (int i = 0; i < size; i++) {
+			workers[i] = new Worker(i);
+		}
+	}
+
+	/**
+	 * @return C&amp;C's output for the sentence, as it would be from candc.sh: empty if it couldn't be parsed.
+	 */
+	public String parse(String sentence) throws IOException {
+		return parse(sentence, pickWorker());
+	}
+
+	/**
+	 * Parses on a given worker - say, to send a duplicate of a slow request to a different one.
+	 *
+	 * @param worker any number, taken modulo the pool size: <code>worker</code> and <code>worker + 1</code> are different workers
+	 * if there's more than one.
+	 * @see #pickWorker()
+	 */
+	public String parse(String sentence, int worker) throws IOException {
+		Worker chosen = worker(worker);
+		return await(chosen, chosen.submit(ImmutableList.of(sentence)).get(0), sentence);
+	}
+
+	/** The worker parse(String) would use next, round robin. */
+	public int pickWorker() {
+		return next.getAndIncrement();
+	}
+
+	public int size() {
+		return workers.length;
+	}
+
+	private Worker worker(int index) {
+		return workers[(index & Integer.MAX_VALUE) % workers.length];
+	}
+
+	/**
+	 * Sends all the sentences to one worker in a single write, so they're parsed back to back.
+	 *
+	 * @return C&amp;C's output for each sentence, in order.
+	 */
+	public List<String> parseAll(List<String> sentences) throws IOException {
+		if (sentences.isEmpty())
+			return ImmutableList.of();
+		Worker worker = worker(pickWorker());
+		List<Future<String>> outputs = worker.submit(sentences);
+		List<String> parses = new ArrayList<String>(sentences.size());
+		for (int i = 0; i < sentences.size(); i++) {
+			parses.add(await(worker, outputs.get(i), sentences.get(i)));
+		}
+		return parses;
+	}
+
+	private String await(Worker worker, Future<String> output, String sentence) throws IOException {
+		try {
+			return output.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			worker.stop(new IOException("C&C worker " + worker.id + " timed out"));
+			throw new IOException("No parse within " + timeoutMillis + "ms for: " + sentence, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to parse: " + sentence, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for parse of: " + sentence);
+		}
+	}
+
+	@Override
+	public void close() {
+		for (Worker worker : workers) {
+			worker.stop(new IOException("C&C worker pool closed"));
+		}
+	}
+
+	private final class Worker {
+		private final int id;
+		private final Queue<SettableFuture<String>> inFlight = new LinkedList<SettableFuture<String>>();
+		private final Object writeLock = new Object(); // taken before the worker's lock, never after
+		private Process process;
+		private Writer stdin;
+
+		private Worker(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Registers the sentences' outputs under the worker's lock, then writes the sentences outside it - so the reader can carry on
+		 * completing outputs, and C&amp;C carry on reading, however big the write. Writes are kept in registration order by their own lock.
+		 */
+		private List<Future<String>> submit(List<String> sentences) throws IOException {
+			List<Future<String>> outputs = new ArrayList<Future<String>>(sentences.size());
+			synchronized (writeLock) {
+				Process to;
+				Writer in;
+				synchronized (this) {
+					if (process == null)
+						start();
+					to = process;
+					in = stdin;
+					for (int i = 0; i < sentences.size(); i++) {
+						SettableFuture<String> output = SettableFuture.create();
+						inFlight.add(output);
+						outputs.add(output);
+					}
+				}
+				try {
+					for (String sentence : sentences) {
+						in.write(sentence.replace('\n', ' '));
+						in.write('\n');
+						in.write(SENTINEL);
+						in.write('\n');
+					}
+					in.flush();
+				} catch (IOException e) {
+					exited(to, e); // fails 'outputs' too, unless the worker's already been stopped - which has
+				}
+			}
+			return outputs;
+		}
+
+		private void start() throws IOException {
+			final Process started = new ProcessBuilder("/bin/bash", script).start();
+			process = started;
+			stdin = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), Charsets.UTF_8));
+			Thread reader = new Thread("candc-worker-" + id) {
+				@Override
+				public void run() {
+					read(started);
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+			LOGGER.info("Started C&C worker {}.", id);
+		}
+
+		private void read(Process from) {
+			BufferedReader stdout = new BufferedReader(new InputStreamReader(from.getInputStream(), Charsets.UTF_8));
+			String output = ""; // up to the sentence's tokens line
+			StringBuilder pending = new StringBuilder(); // since then: the sentinel's GRs, or those of a sentence with no tokens line
+			try {
+				for (String line; (line = stdout.readLine()) != null;) {
+					if (!line.startsWith("(") && !line.startsWith("<"))
+						continue;
+					if (isSentinel(line)) { // ends a sentence
+						complete(from, output);
+						output = "";
+						pending = new StringBuilder();
+						continue;
+					}
+					pending.append(line);
+					pending.append('\n');
+					if (line.startsWith("<c> ")) {
+						output = pending.toString();
+						pending = new StringBuilder();
+					}
+				}
+				exited(from, new IOException("C&C worker " + id + " exited"));
+			} catch (IOException e) {
+				exited(from, e);
+			}
+		}
+
+		private boolean isSentinel(String line) {
+			if (!line.startsWith(SENTINEL_TOKENS))
+				return false;
+			if (line.length() == SENTINEL_TOKENS.length())
+				return true;
+			char next = line.charAt(SENTINEL_TOKENS.length());
+			return next == ' ' || next == '|'; // as written, or as C&C's word|lemma|tag|... tokens
+		}
+
+		private synchronized void complete(Process from, String output) {
+			if (from != process)
+				return; // from a worker that's since been stopped
+			SettableFuture<String> next = inFlight.poll();
+			if (next != null)
+				next.set(output);
+		}
+
+		private synchronized void exited(Process from, IOException cause) {
+			if (from == process)
+				stop(cause);
+		}
+
+		private synchronized void stop(IOException cause) {
+			if (process != null) {
+				LOGGER.warn("Stopping C&C worker {}: {}", id, cause.getMessage());
+				process.destroy();
+				process = null;
+				stdin = null;
+			}
+			for (SettableFuture<String> output : inFlight) {
+				output.setException(cause);
+			}
+			inFlight.clear();
+		}
+	}
+}
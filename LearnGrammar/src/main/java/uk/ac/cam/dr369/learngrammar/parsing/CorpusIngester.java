@@ -0,0 +1,493 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetSemanticAnalyser;
+import uk.ac.cam.dr369.learngrammar.util.Utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Grows the corpus from plain text: splits documents into sentences, parses them in parallel, and appends those that are kept to a
+ * C&amp;C .gr corpus file, just as if they'd been parsed offline. Documents are read a paragraph at a time, and at most
+ * <code>concurrency</code> parses run at once with at most <code>queueSize</code> more waiting - reading waits on the parser - so
+ * memory use is bounded however large the documents. Sentences are appended in the order they appear.
+ * <p>
+ * Progress is checkpointed to a file alongside the corpus file every <code>checkpointInterval</code> sentences: how many sentences
+ * have been dealt with, and how long the corpus file was then. Ingesting the same documents again resumes from the checkpoint,
+ * discarding anything appended after it; once finished, ingesting them again adds nothing. If the corpus's {@link CorpusSnapshot}
+ * was up to date when the ingest began, the new sentences are added to it at the end, rather than it being rebuilt on next load.
+ *
+ * @author duncan.roberts
+ */
+public class CorpusIngester {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CorpusIngester.class);
+	private static final String CHECKPOINT_SUFFIX = ".ingest";
+	private static final int MAX_PARAGRAPH_CHARS = 100000; // text without blank lines is split at the next line break past this
+	private static final int SNAPSHOT_BATCH = 10000;
+
+	private static final String DOCUMENTS = "documents";
+	private static final String SENTENCES = "sentences";
+	private static final String START_LENGTH = "startLength";
+	private static final String CORPUS_LENGTH = "corpusLength";
+	private static final String EXTEND_SNAPSHOT = "extendSnapshot";
+	private static final String COMPLETE = "complete";
+
+	/** Fewest words in a corpus sentence, as for the corpus sentences Commonality offers. */
+	public static final int MIN_SENTENCE_WORDS = 5;
+
+	/** Keeps C&amp;C output for a whole sentence, not a {@link DependencyStructure#isFragment(int) fragment}. Lemmatises with WordNet. */
+	public static final Predicate<String> WHOLE_SENTENCES = new Predicate<String>() {
+		@Override
+		public boolean apply(String output) {
+			DependencyStructure ds = CandcSyntacticParser.getDependencyStructure(output);
+			return ds != null && !ds.isFragment(MIN_SENTENCE_WORDS);
+		}
+	};
+
+	public interface Parser {
+		/** @return C&amp;C's output for the sentence, as in a .gr file; empty if it doesn't parse. */
+		String parse(String sentence) throws IOException;
+	}
+
+	private final Parser parser;
+	private final Predicate<String> filter;
+	private final File corpusFile;
+	private final File checkpointFile;
+	private final int concurrency;
+	private final int queueSize;
+	private final int checkpointInterval;
+
+	/**
+	 * @param filter which sentences' C&amp;C output to keep.
+	 * @param corpusFile C&amp;C .gr file to append to; created if need be.
+	 */
+	public CorpusIngester(Parser parser, Predicate<String> filter, File corpusFile, int concurrency, int queueSize,
+			int checkpointInterval) {
+		this.parser = parser;
+		this.filter = filter;
+		this.corpusFile = corpusFile;
+		this.checkpointFile = new File(corpusFile.getPath() + CHECKPOINT_SUFFIX);
+		this.concurrency = concurrency;
+		this.queueSize = queueSize;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/** Outcome of an ingest. */
+	public static class Result {
+		private final long resumed;
+		private final long added;
+		private final long unparsed;
+		private final long rejected;
+		private final long failed;
+
+		private Result(long resumed, long added, long unparsed, long rejected, long failed) {
+			this.resumed = resumed;
+			this.added = added;
+			this.unparsed = unparsed;
+			this.rejected = rejected;
+			this.failed = failed;
+		}
+
+		/** Sentences passed over as already dealt with before the checkpoint. */
+		public long getResumed() {
+			return resumed;
+		}
+		/** Sentences appended to the corpus. */
+		public long getAdded() {
+			return added;
+		}
+		/** Sentences C&amp;C gave no parse for. */
+		public long getUnparsed() {
+			return unparsed;
+		}
+		/** Sentences not kept by the filter. */
+		public long getRejected() {
+			return rejected;
+		}
+		/** Sentences the parser or filter threw an exception for. */
+		public long getFailed() {
+			return failed;
+		}
+
+		@Override
+		public String toString() {
+			return added + " sentences added, " + unparsed + " unparsed, " + rejected + " rejected, " + failed + " failed" +
+					(resumed > 0 ? "; resumed after " + resumed : "") + ".";
+		}
+	}
+
+	/**
+	 * Ingests the documents - plain text, UTF-8, paragraphs separated by blank lines - resuming an ingest of the same documents that
+	 * was interrupted. Sentences that can't be parsed are logged and left out, rather than stopping the ingest.
+	 *
+	 * @throws IllegalStateException if an ingest of other documents into the same corpus file hasn't finished.
+	 */
+	public synchronized Result ingest(List<File> documents) throws IOException {
+		List<String> paths = new ArrayList<String>(documents.size());
+		for (File document : documents) {
+			paths.add(document.getAbsolutePath());
+		}
+		String documentList = Joiner.on(File.pathSeparatorChar).join(paths);
+		Properties checkpoint = readCheckpoint();
+		if (checkpoint != null && !documentList.equals(checkpoint.getProperty(DOCUMENTS))) {
+			if (!Boolean.parseBoolean(checkpoint.getProperty(COMPLETE)))
+				throw new IllegalStateException("An ingest of other documents into " + corpusFile + " hasn't finished: " +
+						checkpoint.getProperty(DOCUMENTS) + ". Finish it first, or delete " + checkpointFile + ".");
+			checkpoint = null;
+		}
+		if (checkpoint == null) {
+			checkpoint = new Properties();
+			checkpoint.setProperty(DOCUMENTS, documentList);
+			checkpoint.setProperty(SENTENCES, "0");
+			checkpoint.setProperty(START_LENGTH, String.valueOf(corpusFile.length()));
+			checkpoint.setProperty(CORPUS_LENGTH, String.valueOf(corpusFile.length()));
+			checkpoint.setProperty(EXTEND_SNAPSHOT, String.valueOf(corpusFile.isFile() && CorpusSnapshot.isUpToDate(corpusFile)));
+			writeCheckpoint(checkpoint);
+		}
+		else if (!Boolean.parseBoolean(checkpoint.getProperty(COMPLETE))) {
+			LOGGER.info("Resuming ingest into {} after {} sentences.", corpusFile, checkpoint.getProperty(SENTENCES));
+		}
+
+		Run run = new Run(checkpoint);
+		try {
+			run.feed(documents);
+			run.finish();
+		}
+		finally {
+			run.close();
+		}
+		if (!Boolean.parseBoolean(checkpoint.getProperty(COMPLETE))) {
+			if (Boolean.parseBoolean(checkpoint.getProperty(EXTEND_SNAPSHOT)))
+				extendSnapshot(Long.parseLong(checkpoint.getProperty(START_LENGTH)));
+			checkpoint.setProperty(COMPLETE, "true");
+			writeCheckpoint(checkpoint);
+		}
+		Result result = run.result();
+		LOGGER.info("Ingest into {}: {}", corpusFile, result);
+		return result;
+	}
+
+	/** One pass over the documents: parses, and appends to the corpus file, the sentences after the checkpoint. */
+	private final class Run {
+		private final Properties checkpoint;
+		private final long resumeFrom;
+		private final FileOutputStream out;
+		private final Writer writer;
+		private final ExecutorService executor;
+		private final Semaphore permits = new Semaphore(concurrency + queueSize);
+		private final Map<Long, String> pending = new HashMap<Long, String>(); // parsed, waiting on earlier sentences
+		private long next; // next sentence to append; guarded by pending
+		private volatile IOException failure;
+		private long resumed;
+		private final AtomicLong added = new AtomicLong();
+		private final AtomicLong unparsed = new AtomicLong();
+		private final AtomicLong rejected = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+
+		private Run(Properties checkpoint) throws IOException {
+			this.checkpoint = checkpoint;
+			resumeFrom = Long.parseLong(checkpoint.getProperty(SENTENCES));
+			next = resumeFrom;
+			long length = Long.parseLong(checkpoint.getProperty(CORPUS_LENGTH));
+			RandomAccessFile corpus = new RandomAccessFile(corpusFile, "rw");
+			try {
+				if (corpus.length() < length)
+					throw new IOException(corpusFile + " is shorter than at the last checkpoint; delete " + checkpointFile + " to start again.");
+				if (corpus.length() > length) {
+					LOGGER.info("Discarding {} bytes appended to {} since the last checkpoint.", corpus.length() - length, corpusFile);
+					corpus.setLength(length);
+				}
+			}
+			finally {
+				corpus.close();
+			}
+			out = new FileOutputStream(corpusFile, true);
+			writer = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8));
+			if (resumeFrom == 0 && length > 0)
+				writer.write("\n\n"); // whatever the corpus file ended with, the first sentence starts afresh
+			executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ingest-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		private void feed(List<File> documents) throws IOException {
+			long sentence = 0;
+			for (File document : documents) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(document), Charsets.UTF_8));
+				try {
+					StringBuilder paragraph = new StringBuilder();
+					for (String line; (line = in.readLine()) != null;) {
+						boolean blank = line.trim().length() == 0;
+						if (blank || paragraph.length() > MAX_PARAGRAPH_CHARS) {
+							sentence = feed(paragraph.toString(), sentence);
+							paragraph.setLength(0);
+						}
+						if (!blank) {
+							paragraph.append(line);
+							paragraph.append(' ');
+						}
+					}
+					sentence = feed(paragraph.toString(), sentence);
+				}
+				finally {
+					in.close();
+				}
+			}
+		}
+
+		/** @return the number of the sentence after the paragraph's last. */
+		private long feed(String paragraph, long sentence) throws IOException {
+			for (String text : Utils.tokeniseSentences(paragraph)) {
+				if (text.length() == 0)
+					continue;
+				if (sentence < resumeFrom)
+					resumed++;
+				else
+					submit(sentence, text);
+				sentence++;
+			}
+			return sentence;
+		}
+
+		private void submit(final long sentence, final String text) throws IOException {
+			if (failure != null)
+				throw failure;
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting to parse: " + text);
+			}
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					append(sentence, parse(text));
+				}
+			});
+		}
+
+		/** @return the GR and tokens lines to append; empty if the sentence isn't kept. */
+		private String parse(String text) {
+			try {
+				String output = corpusLines(parser.parse(text));
+				if (output.length() == 0) {
+					unparsed.incrementAndGet();
+					return "";
+				}
+				if (!filter.apply(output)) {
+					rejected.incrementAndGet();
+					return "";
+				}
+				return output;
+			} catch (IOException e) {
+				LOGGER.debug("Unable to parse: " + text, e);
+			} catch (RuntimeException e) {
+				LOGGER.debug("Unable to parse: " + text, e);
+			}
+			failed.incrementAndGet();
+			return "";
+		}
+
+		/** Appends the sentence's output once every sentence before it has been. */
+		private void append(long sentence, String output) {
+			synchronized (pending) {
+				pending.put(sentence, output);
+				for (String ready; (ready = pending.remove(next)) != null; next++) {
+					try {
+						if (ready.length() > 0) {
+							writer.write(ready);
+							writer.write('\n'); // blank line between sentences
+							added.incrementAndGet();
+						}
+						if ((next + 1) % checkpointInterval == 0)
+							checkpoint(next + 1);
+					} catch (IOException e) {
+						if (failure == null)
+							failure = e;
+					}
+					permits.release();
+				}
+			}
+		}
+
+		/** Makes sure everything appended so far is on disk, then records it. Call holding pending's lock. */
+		private void checkpoint(long sentences) throws IOException {
+			if (failure != null)
+				return; // the corpus file may be missing sentences
+			writer.flush();
+			out.getChannel().force(false);
+			checkpoint.setProperty(SENTENCES, String.valueOf(sentences));
+			checkpoint.setProperty(CORPUS_LENGTH, String.valueOf(out.getChannel().size()));
+			writeCheckpoint(checkpoint);
+		}
+
+		/** Waits for the last sentences to be appended. */
+		private void finish() throws IOException {
+			try {
+				permits.acquire(concurrency + queueSize);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the last parses");
+			}
+			synchronized (pending) {
+				checkpoint(next);
+			}
+			if (failure != null)
+				throw failure;
+		}
+
+		private void close() {
+			executor.shutdownNow();
+			synchronized (pending) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					LOGGER.warn("Unable to close " + corpusFile, e);
+				}
+			}
+		}
+
+		private Result result() {
+			return new Result(resumed, added.get(), unparsed.get(), rejected.get(), failed.get());
+		}
+	}
+
+	/** Just the GR and <code>&lt;c&gt;</code> lines; empty if there's no <code>&lt;c&gt;</code> line. */
+	private static String corpusLines(String output) {
+		StringBuilder lines = new StringBuilder();
+		boolean tokens = false;
+		for (String line : output.split("\n")) {
+			if (line.startsWith("(") || line.startsWith("<c> ")) {
+				lines.append(line);
+				lines.append('\n');
+				tokens |= line.startsWith("<c> ");
+			}
+		}
+		return tokens ? lines.toString() : "";
+	}
+
+	/** Adds the sentences appended since <code>startLength</code> to the corpus snapshot. */
+	private void extendSnapshot(long startLength) throws IOException {
+		try {
+			WordnetSemanticAnalyser.getInstance().awaitLoaded(); // every sentence is lemmatised
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for WordNet");
+		}
+		List<DependencyStructure> added = new ArrayList<DependencyStructure>();
+		InputStream in = new FileInputStream(corpusFile);
+		try {
+			ByteStreams.skipFully(in, startLength);
+			BufferedReader lines = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+			StringBuilder batch = new StringBuilder();
+			int sentences = 0;
+			for (String line; (line = lines.readLine()) != null;) {
+				batch.append(line);
+				batch.append('\n');
+				if (line.startsWith("<c> ") && ++sentences % SNAPSHOT_BATCH == 0) {
+					added.addAll(CandcSyntacticParser.getDependencyStructures(batch.toString()));
+					batch.setLength(0);
+				}
+			}
+			added.addAll(CandcSyntacticParser.getDependencyStructures(batch.toString()));
+		}
+		finally {
+			in.close();
+		}
+		if (CorpusSnapshot.extend(corpusFile, added))
+			LOGGER.info("Added {} sentences to the snapshot of {}.", added.size(), corpusFile);
+	}
+
+	private Properties readCheckpoint() throws IOException {
+		if (!checkpointFile.isFile())
+			return null;
+		Properties checkpoint = new Properties();
+		InputStream in = new FileInputStream(checkpointFile);
+		try {
+			checkpoint.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return checkpoint;
+	}
+
+	/** Written under a temporary name and then renamed, so a half-written checkpoint is never read. */
+	private void writeCheckpoint(Properties checkpoint) throws IOException {
+		File tempFile = new File(checkpointFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			checkpoint.store(out, "Ingest into " + corpusFile.getName());
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(checkpointFile)) {
+			checkpointFile.delete();
+			if (!tempFile.renameTo(checkpointFile))
+				throw new IOException("Unable to move " + tempFile + " to " + checkpointFile);
+		}
+	}
+
+	/**
+	 * Ingests documents into a corpus file with CandcSyntacticParser, keeping whole sentences. Best run with candc.corpus.enable=false,
+	 * so the corpus isn't loading alongside. Rerun with the same arguments to resume after an interruption.
+	 * Arguments: .gr file, concurrency, documents.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: CorpusIngester <file.gr> <concurrency> <document>...");
+			System.exit(1);
+		}
+		final CandcSyntacticParser candc = CandcSyntacticParser.getInstance();
+		int concurrency = Integer.parseInt(args[1]);
+		List<File> documents = new ArrayList<File>();
+		for (int i = 2; i < args.length; i++) {
+			documents.add(new File(args[i]));
+		}
+		CorpusIngester ingester = new CorpusIngester(new Parser() {
+			@Override
+			public String parse(String sentence) throws IOException {
+				return candc.toCandcOutput(sentence);
+			}
+		}, WHOLE_SENTENCES, new File(args[0]), concurrency, concurrency * 4, 1000);
+		System.out.println(ingester.ingest(documents));
+		System.out.println("Hedging: " + candc.getHedgeStats());
+	}
+}
@@ -0,0 +1,165 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.cam.dr369.learngrammar.semantics.SemanticNounClass;
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetVerbFrame;
+
+/**
+ * A fully initialised corpus, written to a single file after it's first loaded so that later starts can read it straight back in.
+ * Sentences are saved with their tokens' lemmas and named entity classes and the verb frames accepting each token, along with the
+ * animacy of WordNet's common nouns - everything that would otherwise be worked out from WordNet on start-up or on first query.
+ * <p>
+ * The snapshot is only as good as the code that wrote it: verb frames are saved as bitmasks of {@link WordnetVerbFrame} ordinals, for
+ * one. So each file starts with a {@link #stamp() stamp} of the format, and a snapshot with any other stamp is ignored, however new.
+ *
+ * @author duncan.roberts
+ */
+public class CorpusSnapshot implements Serializable {
+	private static final long serialVersionUID = 4273961021684957203L;
+	private static final Logger LOGGER = LoggerFactory.getLogger(CorpusSnapshot.class);
+	private static final String SUFFIX = ".snapshot";
+	/** Increment whenever what's saved changes meaning: lemmatisation, noun classes, verb frame bitmasks, serialised classes. */
+	private static final int FORMAT_VERSION = 1;
+
+	private final ArrayList<DependencyStructure> corpus;
+	private final Integer maxSentences;
+	private final HashMap<String, SemanticNounClass> commonNounClasses;
+
+	private CorpusSnapshot(Collection<DependencyStructure> corpus, Integer maxSentences) {
+		this.corpus = new ArrayList<DependencyStructure>(corpus);
+		this.maxSentences = maxSentences;
+		commonNounClasses = new HashMap<String, SemanticNounClass>(SemanticNounClass.getCommonNounClasses());
+	}
+
+	/** Where the snapshot of a corpus file is kept: alongside it. */
+	public static File fileFor(File corpusFile) {
+		return new File(corpusFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Whether there's a snapshot of <code>corpusFile</code> that's newer than it. Its stamp is only checked when it's read, so it may
+	 * yet be ignored.
+	 */
+	public static boolean isUpToDate(File corpusFile) {
+		File snapshotFile = fileFor(corpusFile);
+		return snapshotFile.isFile() && snapshotFile.lastModified() >= corpusFile.lastModified();
+	}
+
+	/**
+	 * Snapshots a loaded corpus. Each sentence is {@link DependencyStructure#warm() warmed} first. The file is written under a
+	 * temporary name and then renamed, so a half-written snapshot is never read.
+	 */
+	public static void write(File corpusFile, Collection<DependencyStructure> corpus, Integer maxSentences) throws IOException {
+		for (DependencyStructure ds : corpus) {
+			ds.warm();
+		}
+		File snapshotFile = fileFor(corpusFile);
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		ObjectOutputStream oos = null;
+		try {
+			oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			oos.writeObject(stamp());
+			oos.writeObject(new CorpusSnapshot(corpus, maxSentences));
+		}
+		finally {
+			if (oos != null)
+				oos.close();
+		}
+		if (!tempFile.renameTo(snapshotFile)) {
+			snapshotFile.delete();
+			if (!tempFile.renameTo(snapshotFile))
+				throw new IOException("Unable to move " + tempFile + " to " + snapshotFile);
+		}
+		LOGGER.info("Wrote snapshot of {} sentences to {}.", corpus.size(), snapshotFile);
+	}
+
+	/**
+	 * Reads back the snapshot of <code>corpusFile</code>, restoring WordNet's noun animacy as it was when the snapshot was taken.
+	 *
+	 * @return the corpus, with each sentence {@link DependencyStructure#warm() warmed}; or null if the snapshot was taken with a different
+	 * sentence limit or {@link #stamp() stamp}.
+	 */
+	public static Collection<DependencyStructure> read(File corpusFile, Integer maxSentences) throws IOException {
+		File snapshotFile = fileFor(corpusFile);
+		CorpusSnapshot snapshot = readSnapshot(snapshotFile);
+		if (snapshot == null)
+			return null;
+		if (maxSentences == null ? snapshot.maxSentences != null : !maxSentences.equals(snapshot.maxSentences)) {
+			LOGGER.info("Snapshot {} was taken with a different sentence limit ({}); ignoring it.", snapshotFile, snapshot.maxSentences);
+			return null;
+		}
+		SemanticNounClass.preloadCommonNounClasses(snapshot.commonNounClasses);
+		for (DependencyStructure ds : snapshot.corpus) {
+			ds.warm(); // feature filters aren't serialised
+		}
+		LOGGER.info("Read snapshot of {} sentences from {}.", snapshot.corpus.size(), snapshotFile);
+		return snapshot.corpus;
+	}
+
+	/**
+	 * Adds sentences to the snapshot of <code>corpusFile</code> - say, ones just appended to the corpus file - without the corpus being
+	 * loaded afresh. Only a snapshot of the whole corpus is extended; one taken with a sentence limit is left to be rebuilt on next load.
+	 * Sentences already in the snapshot aren't added again, and a snapshot with another {@link #stamp() stamp} isn't extended either.
+	 *
+	 * @return whether the snapshot was extended.
+	 */
+	public static boolean extend(File corpusFile, Collection<DependencyStructure> added) throws IOException {
+		File snapshotFile = fileFor(corpusFile);
+		if (!snapshotFile.isFile())
+			return false;
+		CorpusSnapshot snapshot = readSnapshot(snapshotFile);
+		if (snapshot == null)
+			return false;
+		if (snapshot.maxSentences != null) {
+			LOGGER.info("Snapshot {} was taken with a sentence limit ({}); not extending it.", snapshotFile, snapshot.maxSentences);
+			return false;
+		}
+		SemanticNounClass.preloadCommonNounClasses(snapshot.commonNounClasses);
+		Set<DependencyStructure> corpus = new LinkedHashSet<DependencyStructure>(snapshot.corpus);
+		corpus.addAll(added);
+		write(corpusFile, corpus, null);
+		return true;
+	}
+
+	/** Identifies the format snapshots are written in: the {@link #FORMAT_VERSION} and the number of verb frames. */
+	private static String stamp() {
+		return "format " + FORMAT_VERSION + ", " + WordnetVerbFrame.values().length + " verb frames";
+	}
+
+	/** @return null if the snapshot has another stamp - checked before the rest of it is read. */
+	private static CorpusSnapshot readSnapshot(File snapshotFile) throws IOException {
+		ObjectInputStream ois = null;
+		try {
+			ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+			Object stamp = ois.readObject();
+			if (!stamp().equals(stamp)) {
+				LOGGER.info("Snapshot {} was written in another format ({}, not {}); ignoring it.", snapshotFile, stamp, stamp());
+				return null;
+			}
+			return (CorpusSnapshot) ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unable to read corpus snapshot " + snapshotFile, e);
+		}
+		finally {
+			if (ois != null)
+				ois.close();
+		}
+	}
+}
@@ -2,7 +2,9 @@ package uk.ac.cam.dr369.learngrammar.parsing;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -14,6 +16,8 @@ import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
 import uk.ac.cam.dr369.learngrammar.model.Token;
 import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.Subtype;
 import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.TokenSubtype;
+import uk.ac.cam.dr369.learngrammar.semantics.VerbFrame;
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetVerbFrame;
 import uk.ac.cam.dr369.learngrammar.util.Utils;
 import uk.ac.cam.dr369.learngrammar.util.Utils.VeryCloneable;
 
@@ -22,6 +26,9 @@ public class DependencyStructure implements Comparable<DependencyStructure>, Ver
 	private static final long serialVersionUID = -5058097886775902483L;
 	private final List<GrammaticalRelation> grs;
 	private final List<Token> tokens;
+	private transient volatile FeatureFilter featureFilter; // built at most a few times if raced; any copy will do
+	private volatile long[] verbFrameMasks; // as featureFilter, but serialised: see CorpusSnapshot
+	private transient volatile Integer verbCount; // as featureFilter
 	
 	public DependencyStructure(List<GrammaticalRelation> grs, List<Token> tokens) {
 		this(grs, tokens, true);
@@ -89,6 +96,13 @@ public class DependencyStructure implements Comparable<DependencyStructure>, Ver
 			}
 		}
 	}
+	/**
+	 * Shares <code>sentence</code>'s GRs and tokens rather than copying them. Safe because neither is modified after construction, and
+	 * {@link #getGrs()} and {@link #getTokens()} hand out copies.
+	 */
+	protected DependencyStructure(DependencyStructure sentence) {
+		this(sentence.grs, sentence.tokens, false);
+	}
 	public DependencyStructure substitute(GrammaticalRelation from, GrammaticalRelation to) {
 		if (this.grs.indexOf(from) != -1) {
 			List<Token> tokens = getTokens();
@@ -252,6 +266,78 @@ public class DependencyStructure implements Comparable<DependencyStructure>, Ver
 		else
 			return this;
 	}
+	/**
+	 * As {@link #substitute(Token, Token)}, once for each replacement. Where the tokens a GR links sit in the sentence is worked out
+	 * once, so each variant is wired up directly rather than by searching the token list for every GR.
+	 *
+	 * @return one variant per replacement, in order; empty if <code>from</code> isn't in this sentence.
+	 */
+	public List<DependencyStructure> substituteEach(Token from, List<Token> replacements) {
+		int tokIdx = tokens.indexOf(from);
+		if (tokIdx == -1)
+			return new ArrayList<DependencyStructure>();
+
+		Map<Token, Integer> positions = new IdentityHashMap<Token, Integer>();
+		for (int i = 0; i < tokens.size(); i++) {
+			positions.put(tokens.get(i), i);
+		}
+		int[] heads = new int[grs.size()];
+		int[] dependents = new int[grs.size()];
+		int[] subtypes = new int[grs.size()];
+		for (int g = 0; g < grs.size(); g++) {
+			GrammaticalRelation gr = grs.get(g);
+			heads[g] = position(positions, gr.getHead());
+			dependents[g] = position(positions, gr.getDependent());
+			subtypes[g] = gr.getSubtype() instanceof TokenSubtype ? position(positions, ((TokenSubtype) gr.getSubtype()).token()) : -1;
+			if (heads[g] == -2 || dependents[g] == -2 || subtypes[g] == -2) { // GR refers to a token outside the sentence
+				List<DependencyStructure> variants = new ArrayList<DependencyStructure>();
+				for (Token to : replacements) {
+					variants.add(substitute(from, to));
+				}
+				return variants;
+			}
+		}
+
+		List<DependencyStructure> variants = new ArrayList<DependencyStructure>(replacements.size());
+		for (Token to : replacements) {
+			List<Token> newTokens = new ArrayList<Token>(tokens.size());
+			List<List<GrammaticalRelation>> grAssocs = new ArrayList<List<GrammaticalRelation>>(tokens.size());
+			for (int i = 0; i < tokens.size(); i++) {
+				newTokens.add(i == tokIdx ? // index comes from 'from', as with substitute(Token, Token)
+						new Token(to.getLemma(), to.getSuffix(), from.getIndex(), to.pos(), to.getSupertag(), to.getWord()) :
+						tokens.get(i).clone());
+				grAssocs.add(new ArrayList<GrammaticalRelation>());
+			}
+			List<GrammaticalRelation> newGrs = new ArrayList<GrammaticalRelation>(grs.size());
+			for (int g = 0; g < grs.size(); g++) {
+				GrammaticalRelation gr = grs.get(g);
+				Subtype subtype = subtypes[g] >= 0 ? new TokenSubtype(newTokens.get(subtypes[g])) :
+					(gr.getSubtype() == null ? null : gr.getSubtype().clone());
+				GrammaticalRelation newGr = new GrammaticalRelation(gr.type(), subtype, gr.getInitialGrValue(),
+						heads[g] >= 0 ? newTokens.get(heads[g]) : null, dependents[g] >= 0 ? newTokens.get(dependents[g]) : null);
+				newGrs.add(newGr);
+				// Linked in the same order as the constructor does
+				if (dependents[g] >= 0)
+					grAssocs.get(dependents[g]).add(newGr);
+				if (heads[g] >= 0)
+					grAssocs.get(heads[g]).add(newGr);
+				if (subtypes[g] >= 0)
+					grAssocs.get(subtypes[g]).add(newGr);
+			}
+			for (int i = 0; i < newTokens.size(); i++) {
+				newTokens.get(i).initialiseGrs(grAssocs.get(i));
+			}
+			variants.add(new DependencyStructure(newGrs, newTokens, false));
+		}
+		return variants;
+	}
+	/** @return position of <code>token</code> in the sentence; -1 if null, -2 if it isn't one of the sentence's tokens. */
+	private static int position(Map<Token, Integer> positions, Token token) {
+		if (token == null)
+			return -1;
+		Integer position = positions.get(token);
+		return position == null ? -2 : position;
+	}
 	public String getSentence() {
 		StringBuilder sb = new StringBuilder();
 		for (Token token : tokens) {
@@ -261,12 +347,120 @@ public class DependencyStructure implements Comparable<DependencyStructure>, Ver
 		String detokenised = Utils.detokenise(sb.toString().trim());
 		return detokenised;
 	}
+	/**
+	 * Whether the sentence looks like a fragment, or is otherwise a poor example: too short, not capitalised or punctuated as a sentence,
+	 * without a verb, or full of figures.
+	 *
+	 * @param minLength fewest words a whole sentence can have.
+	 */
+	public boolean isFragment(int minLength) {
+		String sentence = getSentence();
+		
+		if (sentence.split(" ").length < minLength) // Very short sentences more likely to be fragments. Note we're splitting on the DEtokenised string.
+			return true;
+		if (sentence.substring(0, 1).matches("[^A-Z]")) // first word should start with initial capital
+			return true;
+		if (sentence.substring(sentence.length()-1).matches("[^.!?]")) // should end with sentence-terminal punctuation
+			return true;
+		
+		boolean verbFound = false;
+		boolean containsLowercaseInitial = false;
+		int nFigures = 0;
+		for (Token tok : tokens) {
+			if (tok.getWord().matches(
+					"([0-9]+/[0-9]+" + // fraction
+					"|" +
+					"yen" +
+					"|" +
+					"dollars" +
+					"|" +
+					"cents" +
+					"|" +
+					"francs" +
+					"|" +
+					"([A-Z]*[£$%]))")) { // stock quotes are syntactically boring.
+				nFigures++;
+			}
+			else if (tok.isVerb()) {
+				verbFound = true;
+//				if (containsLowercaseInitial)
+//					break;
+			}
+			if (tok.getWord().substring(0, 1).matches("[a-z]")) {
+				containsLowercaseInitial = true;
+//				if (verbFound)
+//					break;
+			}
+		}
+		if (!verbFound || !containsLowercaseInitial || nFigures > 1)
+			return true;
+		return false;
+	}
+	/** Built on first use and kept, as corpus sentences are tested over and over. */
+	public FeatureFilter getFeatureFilter() {
+		FeatureFilter filter = featureFilter;
+		if (filter == null) {
+			filter = FeatureFilter.of(tokens, grs);
+			featureFilter = filter;
+		}
+		return filter;
+	}
+	/** Number of verb tokens. Counted on first use, for ScoreBound. */
+	public int getVerbCount() {
+		Integer count = verbCount;
+		if (count == null) {
+			int verbs = 0;
+			for (Token tok : tokens) {
+				if (tok.isVerb())
+					verbs++;
+			}
+			count = verbs;
+			verbCount = count;
+		}
+		return count;
+	}
+	/**
+	 * Frames accepting each token, as {@link WordnetVerbFrame#toMask(Iterable) masks}. Worked out for the whole sentence on first
+	 * use, as corpus sentences are scored over and over.
+	 */
+	private long[] getVerbFrameMasks() {
+		long[] masks = verbFrameMasks;
+		if (masks == null) {
+			masks = new long[tokens.size()];
+			for (int i = 0; i < masks.length; i++) {
+				Token token = tokens.get(i);
+				if (token.isVerb())
+					masks[i] = WordnetVerbFrame.toMask(WordnetVerbFrame.getAcceptingFrames(token));
+			}
+			verbFrameMasks = masks;
+		}
+		return masks;
+	}
+	/**
+	 * As {@link WordnetVerbFrame#getAcceptingFrames(Token)}, for the token at <code>position</code> in {@link #getTokens()}. Read only.
+	 */
+	public Set<VerbFrame> getAcceptingFrames(int position) {
+		return Collections.<VerbFrame>unmodifiableSet(WordnetVerbFrame.fromMask(getVerbFrameMasks()[position]));
+	}
+	/** Works out now everything about the sentence that's otherwise worked out on first use. */
+	public void warm() {
+		getFeatureFilter();
+		getVerbCount();
+		getVerbFrameMasks();
+	}
 	public List<Token> getTokens() {
 		return Utils.deepCopy(tokens);
 	}
 	protected List<Token> getTokens(boolean copy) {
 		return copy ? getTokens() : tokens;
 	}
+	/**
+	 * The sentence's own tokens, uncopied, for read-only use where {@link #getTokens()} would copy the sentence over and over - as
+	 * when scoring a corpus. The tokens themselves mustn't be modified either.
+	 */
+	public List<Token> getTokensView() {
+		return Collections.unmodifiableList(tokens);
+	}
 	public List<GrammaticalRelation> getGrs() {
 		return Utils.deepCopy(grs);
 	}
@@ -0,0 +1,85 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.Pos;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Bloom filter over the lemmas, supertags, POS tags and GR types of a sentence. POS tags and GR types go in along with all their
+ * ancestors, so a structure can be tested by its own (possibly more general) labels. There are no false negatives: if
+ * {@link #mightContainAll(Collection)} is false, no structure with those labels can be found in the sentence.
+ * 
+ * @author duncan.roberts
+ */
+public class FeatureFilter {
+	private static final double FALSE_POSITIVE_PROBABILITY = 0.01d;
+	private static final String SPACER_LEMMA = "NULL"; // Twigs link in spacer tokens that aren't from the sentence
+	
+	private final BloomFilter<CharSequence> filter;
+	
+	private FeatureFilter(Set<String> keys) {
+		filter = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), Math.max(keys.size(), 1), FALSE_POSITIVE_PROBABILITY);
+		for (String key : keys) {
+			filter.put(key);
+		}
+	}
+	public static FeatureFilter of(List<Token> tokens, List<GrammaticalRelation> grs) {
+		return new FeatureFilter(keys(tokens, grs, true));
+	}
+	public boolean mightContainAll(Collection<String> keys) {
+		for (String key : keys) {
+			if (!filter.mightContain(key))
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Keys for the labels of a sentence or structure. Null labels and spacer tokens give no keys.
+	 * 
+	 * @param hierarchy whether to add the ancestors of POS tags and GR types: true for a sentence, false for a structure to be tested.
+	 */
+	public static Set<String> keys(List<Token> tokens, List<GrammaticalRelation> grs, boolean hierarchy) {
+		Set<String> keys = new HashSet<String>();
+		for (Token tok : tokens) {
+			String lemma = tok.getLemma();
+			if (lemma != null && !lemma.equals(SPACER_LEMMA))
+				keys.add("lemma:"+lemma);
+			String supertag = tok.getSupertag();
+			if (supertag != null)
+				keys.add("supertag:"+supertag);
+			Pos pos = tok.pos();
+			if (pos != null) {
+				if (hierarchy) {
+					for (Pos ancestor : pos.ancestors()) {
+						keys.add("pos:"+ancestor);
+					}
+				}
+				else
+					keys.add("pos:"+pos);
+			}
+		}
+		for (GrammaticalRelation gr : grs) {
+			GrType type = gr.type();
+			if (type != null) {
+				if (hierarchy) {
+					for (GrType ancestor : type.ancestors()) {
+						keys.add("gr:"+ancestor);
+					}
+				}
+				else
+					keys.add("gr:"+type);
+			}
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,218 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Parses kept on disk, so that a sentence parsed once - in this session or an earlier one - needn't be parsed again. Keyed on the
+ * parser (and its configuration) plus the sentence as the parser is given it. One file per parse, named by a hash of the key; at
+ * most <code>maxEntries</code> are kept, the least recently used being deleted to make room. Recency is recorded in each file's
+ * modification time, so it carries over between sessions. The directory isn't created until the first parse is put. Safe to share
+ * between threads, and the cache is only ever an optimisation: any file that can't be read or written is just treated as a miss.
+ *
+ * @author duncan.roberts
+ */
+public class ParseCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParseCache.class);
+	private static final String SUFFIX = ".parse";
+
+	private static final String DEFAULT_DIRECTORY = System.getProperty("user.home") + File.separator + ".learngrammar"
+			+ File.separator + "parse-cache";
+	private static final int DEFAULT_MAX_ENTRIES = 20000;
+	/** System property turning off the shared cache - say, to measure parser throughput, or in tests. */
+	public static final String DISABLE_PROPERTY = "learngrammar.parsecache.disable";
+	/** System property giving the shared cache's directory: <code>~/.learngrammar/parse-cache</code> by default. */
+	public static final String DIRECTORY_PROPERTY = "learngrammar.parsecache.dir";
+
+	private final File directory;
+	private final int maxEntries;
+	/** File names, least recently used first. */
+	private final LinkedHashMap<String, Boolean> index = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Initialised by the JVM on first use of getInstance(). */
+	private static final class InstanceHolder {
+		static final ParseCache INSTANCE = new ParseCache(new File(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)),
+				Boolean.getBoolean(DISABLE_PROPERTY) ? 0 : DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * The cache shared by the parsers, kept in the {@link #DIRECTORY_PROPERTY} directory; empty if the {@link #DISABLE_PROPERTY} is
+	 * true.
+	 */
+	public static ParseCache getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
+	/** @param maxEntries 0 to cache nothing. */
+	public ParseCache(File directory, int maxEntries) {
+		this.directory = directory;
+		this.maxEntries = maxEntries;
+		if (maxEntries <= 0)
+			return;
+		File[] files = directory.listFiles(); // null if it's yet to be created
+		if (files != null) {
+			Arrays.sort(files, new Comparator<File>() {
+				@Override
+				public int compare(File f1, File f2) {
+					long m1 = f1.lastModified(), m2 = f2.lastModified();
+					return m1 < m2 ? -1 : m1 > m2 ? 1 : 0;
+				}
+			});
+			for (File file : files) {
+				if (file.getName().endsWith(SUFFIX))
+					index.put(file.getName(), Boolean.TRUE);
+			}
+			evict();
+			LOGGER.info("{} parses in cache {}.", index.size(), directory);
+		}
+	}
+
+	/**
+	 * @param parser identifies the parser and anything about its configuration that could change the parse.
+	 * @return the cached parse, or null if there isn't one.
+	 */
+	public DependencyStructure get(String parser, String sentence) {
+		String name = fileName(parser, sentence);
+		synchronized (index) {
+			if (index.get(name) == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+		File file = new File(directory, name);
+		ObjectInputStream ois = null;
+		try {
+			ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			Entry entry = (Entry) ois.readObject();
+			if (entry.parser.equals(parser) && entry.sentence.equals(sentence)) {
+				file.setLastModified(System.currentTimeMillis());
+				hits.incrementAndGet();
+				return entry.parse;
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Unable to read cached parse " + file, e);
+		} catch (ClassNotFoundException e) {
+			LOGGER.debug("Unable to read cached parse " + file, e);
+		} catch (ClassCastException e) {
+			LOGGER.debug("Unable to read cached parse " + file, e);
+		}
+		finally {
+			if (ois != null) {
+				try {
+					ois.close();
+				} catch (IOException e) {
+					// nothing more to do
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/** Caches a parse, replacing any already there for the sentence. Null parses aren't cached. */
+	public void put(String parser, String sentence, DependencyStructure parse) {
+		if (parse == null || maxEntries <= 0)
+			return;
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) { // may have lost a race to create it
+			LOGGER.debug("Unable to create parse cache directory {}", directory);
+			return;
+		}
+		String name = fileName(parser, sentence);
+		File file = new File(directory, name);
+		File tempFile = new File(directory, name + "." + Thread.currentThread().getId() + ".tmp");
+		ObjectOutputStream oos = null;
+		try {
+			oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			oos.writeObject(new Entry(parser, sentence, parse));
+			oos.close();
+			oos = null;
+			if (!tempFile.renameTo(file)) {
+				file.delete();
+				if (!tempFile.renameTo(file))
+					throw new IOException("Unable to move " + tempFile + " to " + file);
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Unable to cache parse of: " + sentence, e);
+			tempFile.delete();
+			return;
+		}
+		finally {
+			if (oos != null) {
+				try {
+					oos.close();
+				} catch (IOException e) {
+					// nothing more to do
+				}
+			}
+		}
+		synchronized (index) {
+			index.put(name, Boolean.TRUE);
+			evict();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (index) {
+			return index.size();
+		}
+	}
+
+	private void evict() {
+		Iterator<String> lru = index.keySet().iterator();
+		while (index.size() > maxEntries && lru.hasNext()) {
+			String name = lru.next();
+			lru.remove();
+			new File(directory, name).delete();
+		}
+	}
+
+	private static String fileName(String parser, String sentence) {
+		return Hashing.sha1().newHasher()
+				.putString(parser, Charsets.UTF_8)
+				.putByte((byte) 0)
+				.putString(sentence, Charsets.UTF_8)
+				.hash().toString() + SUFFIX;
+	}
+
+	/** What's stored: the key is kept alongside the parse in case of a hash collision. */
+	private static class Entry implements Serializable {
+		private static final long serialVersionUID = 7390456164231409685L;
+		private final String parser;
+		private final String sentence;
+		private final DependencyStructure parse;
+
+		private Entry(String parser, String sentence, DependencyStructure parse) {
+			this.parser = parser;
+			this.sentence = sentence;
+			this.parse = parse;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package uk.ac.cam.dr369.learngrammar.parsing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cam.dr369.learngrammar.model.Claws2Pos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.FlagSubtype;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.Subtype;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.TokenSubtype;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+
+import com.google.common.io.LineProcessor;
+
+/**
+ * Reads the output of rasp_pipeline.sh one sentence at a time, either pulled from a Reader or handed over a line at a time: first the
+ * tokenised sentences (each line starting "^ "), then a "%%" line, then for each sentence its tokens line, a header line and its GRs,
+ * with blank lines between sentences. Decodes tokens and GRs by scanning for their delimiters rather than with regular expressions.
+ *
+ * @author duncan.roberts
+ */
+public class RaspOutputReader implements LineProcessor<List<DependencyStructure>> {
+	static final String SEPARATOR = "%%";
+
+	private enum State { WORD_FORMS, TOKENS, HEADER, GRS }
+
+	private final BufferedReader in;
+	private final List<String> wordForms = new ArrayList<String>(); // the tokenised sentences
+	private final List<DependencyStructure> read = new ArrayList<DependencyStructure>(); // when used as a LineProcessor
+	private State state = State.WORD_FORMS;
+	private int sentence;
+	// The sentence being read
+	private List<Token> tokens;
+	private Map<String, Token> tokenMap;
+	private List<GrammaticalRelation> grs;
+
+	/** Reads output handed over a line at a time, as a {@link LineProcessor} - say, by ScriptRunner as the script writes it. */
+	public RaspOutputReader() {
+		this.in = null;
+	}
+
+	/** Reads output from <code>in</code>, a sentence per call to {@link #next()}. */
+	public RaspOutputReader(Reader in) {
+		this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+	}
+
+	/** @return the next sentence, or null if there are no more. */
+	public DependencyStructure next() throws IOException {
+		for (String line; (line = in.readLine()) != null;) {
+			DependencyStructure ds = accept(line);
+			if (ds != null)
+				return ds;
+		}
+		return finish();
+	}
+
+	/** @return all the sentences not yet read. */
+	public List<DependencyStructure> readAll() throws IOException {
+		List<DependencyStructure> dses = new ArrayList<DependencyStructure>();
+		for (DependencyStructure ds; (ds = next()) != null;) {
+			dses.add(ds);
+		}
+		return dses;
+	}
+
+	@Override
+	public boolean processLine(String line) {
+		DependencyStructure ds = accept(line);
+		if (ds != null)
+			read.add(ds);
+		return true;
+	}
+
+	/** @return the sentences read, in order. */
+	@Override
+	public List<DependencyStructure> getResult() {
+		DependencyStructure ds = finish();
+		if (ds != null)
+			read.add(ds);
+		return read;
+	}
+
+	/** @return the sentence that <code>line</code> completes, if any. */
+	private DependencyStructure accept(String line) {
+		switch (state) {
+		case WORD_FORMS:
+			if (line.equals(SEPARATOR))
+				state = State.TOKENS;
+			else if (line.startsWith("^ "))
+				wordForms.add(line.substring("^ ".length())); // trim off start-of-sentence marker
+			return null;
+		case TOKENS:
+			if (line.length() > 0) {
+				readTokens(line);
+				state = State.HEADER;
+			}
+			return null;
+		case HEADER:
+			state = State.GRS;
+			return null;
+		default:
+			if (line.length() > 0) {
+				grs.add(toGr(line, tokenMap));
+				return null;
+			}
+			return finish();
+		}
+	}
+
+	/** @return the sentence being read, if any, now that its GRs are over. */
+	private DependencyStructure finish() {
+		if (state != State.HEADER && state != State.GRS)
+			return null;
+		state = State.TOKENS;
+		DependencyStructure ds = new DependencyStructure(grs, tokens);
+		tokens = null;
+		tokenMap = null;
+		grs = null;
+		return ds;
+	}
+
+	private void readTokens(String tokensLine) {
+		if (sentence >= wordForms.size())
+			throw new IllegalStateException("More parses than tokenised sentences at: " + tokensLine);
+		String[] words = wordForms.get(sentence++).split(" ");
+
+		tokens = new ArrayList<Token>();
+		tokenMap = new HashMap<String, Token>();
+		grs = new ArrayList<GrammaticalRelation>();
+		int end = tokensLine.lastIndexOf(')', tokensLine.lastIndexOf(';'));
+		for (int i = tokensLine.indexOf('(') + 1; i < end;) {
+			if (tokensLine.charAt(i) != '|') {
+				i++;
+				continue;
+			}
+			int close = tokensLine.indexOf('|', i + 1);
+			String tokenStr = tokensLine.substring(i + 1, close);
+			Token token = toToken(tokenStr, words);
+			tokens.add(token);
+			tokenMap.put(tokenStr, token);
+			i = close + 1;
+		}
+	}
+
+	/** <code>lemma[+suffix]:index_TAG</code>, index counting from 1. */
+	private static Token toToken(String tokenStr, String[] words) {
+		int colon = indexSplit(tokenStr);
+		if (colon < 0)
+			throw new IllegalStateException("Cannot parse: " + tokenStr);
+		int underscore = tokenStr.indexOf('_', colon);
+		int plus = tokenStr.indexOf('+', 1);
+		String lemma, suffix;
+		if (plus < 0 || plus > colon) {
+			lemma = tokenStr.substring(0, colon);
+			suffix = null;
+		}
+		else {
+			lemma = tokenStr.substring(0, plus);
+			suffix = tokenStr.substring(plus + 1, colon);
+		}
+		int index = Integer.parseInt(tokenStr.substring(colon + 1, underscore)) - 1; // Normalise to zero-indexed
+		String tag = tokenStr.substring(underscore + 1);
+		return new Token(lemma, suffix, index, Claws2Pos.valueOfByLabel(tag), null, words[index]);
+	}
+
+	/** @return position of the last ':' followed by digits then '_', or -1. */
+	private static int indexSplit(String tokenStr) {
+		for (int colon = tokenStr.lastIndexOf(':'); colon > 0; colon = tokenStr.lastIndexOf(':', colon - 1)) {
+			int i = colon + 1;
+			while (i < tokenStr.length() && Character.isDigit(tokenStr.charAt(i)))
+				i++;
+			if (i > colon + 1 && i < tokenStr.length() - 1 && tokenStr.charAt(i) == '_')
+				return colon;
+		}
+		return -1;
+	}
+
+	/**
+	 * <code>(|type| [subtype] |head| |dependent| [initial])</code> or <code>(|passive| |head|)</code>. The subtype is <code>_</code>, a
+	 * flag or a token, all barred but <code>_</code>.
+	 */
+	private static GrammaticalRelation toGr(String gr, Map<String, Token> tokens) {
+		if (!gr.startsWith("(") || !gr.endsWith(")"))
+			throw new IllegalStateException("Cannot parse: " + gr);
+		List<String> fields = new ArrayList<String>(5);
+		List<Boolean> barred = new ArrayList<Boolean>(5);
+		int end = gr.length() - 1;
+		for (int i = 1; i < end;) {
+			char c = gr.charAt(i);
+			if (c == ' ') {
+				i++;
+			}
+			else if (c == '|') {
+				int close = gr.indexOf('|', i + 1);
+				if (close < 0 || close >= end)
+					throw new IllegalStateException("Cannot parse: " + gr);
+				fields.add(gr.substring(i + 1, close));
+				barred.add(Boolean.TRUE);
+				i = close + 1;
+			}
+			else {
+				int space = gr.indexOf(' ', i);
+				int close = space < 0 || space > end ? end : space;
+				fields.add(gr.substring(i, close));
+				barred.add(Boolean.FALSE);
+				i = close;
+			}
+		}
+		if (fields.isEmpty() || !barred.get(0))
+			throw new IllegalStateException("Cannot parse: " + gr);
+		GrType type = GrType.valueOfByLabel(fields.get(0));
+		if (fields.get(0).equals("passive")) {
+			if (fields.size() != 2)
+				throw new IllegalStateException("Can't parse: " + gr);
+			return new GrammaticalRelation(type, null, null, tokens.get(fields.get(1)), null);
+		}
+
+		int n = fields.size();
+		boolean hasSubtype = n == 5 || (n == 4 && barred.get(3));
+		if (n < 3 || n > 5)
+			throw new IllegalStateException("Cannot parse: " + gr);
+		Subtype subtype = null;
+		int head = 1;
+		if (hasSubtype) {
+			String subtypeStr = fields.get(1);
+			if (!barred.get(1)) {
+				if (!subtypeStr.equals("_"))
+					throw new IllegalStateException("Invalid subtype: " + subtypeStr);
+			}
+			else if (tokens.containsKey(subtypeStr)) {
+				subtype = new TokenSubtype(tokens.get(subtypeStr));
+			}
+			else {
+				subtype = new FlagSubtype(subtypeStr);
+			}
+			head = 2;
+		}
+		String initialGrValue = head + 2 < n ? fields.get(head + 2) : null;
+		return new GrammaticalRelation(type, subtype, initialGrValue, tokens.get(fields.get(head)), tokens.get(fields.get(head + 1)));
+	}
+}
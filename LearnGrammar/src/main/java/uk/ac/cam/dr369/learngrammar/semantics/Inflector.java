@@ -0,0 +1,204 @@
+package uk.ac.cam.dr369.learngrammar.semantics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import simplenlg.lexicon.Lexicon;
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GenericPos;
+import uk.ac.cam.dr369.learngrammar.model.Pos;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import edu.mit.jwi.item.POS;
+
+/**
+ * Inflects lemmas to a POS tag with SimpleNLG's lexicon, caching the answers. The cache can be filled from a table written by
+ * {@link #writeInflections(File, Map)}, so that the lexicon isn't needed at all for words in the table.
+ *
+ * @author duncan.roberts
+ */
+public class Inflector {
+	private static final Logger LOGGER = LoggerFactory.getLogger(Inflector.class);
+
+	/** Forms {@link #writeInflections(File, Map)} tabulates for each WordNet POS. */
+	public static final ImmutableMap<POS, ImmutableList<CandcPtbPos>> INFLECTED_FORMS = ImmutableMap.of(
+			POS.VERB, ImmutableList.of(CandcPtbPos.VERB_PAST_TENSE, CandcPtbPos.VERB_PAST_PARTICIPLE,
+					CandcPtbPos.VERB_GERUND_OR_PRESENT_PARTICIPLE, CandcPtbPos.VERB_3SG_PRESENT),
+			POS.NOUN, ImmutableList.of(CandcPtbPos.NOUN_PLURAL_COMMON),
+			POS.ADJECTIVE, ImmutableList.of(CandcPtbPos.ADJECTIVE_COMPARATIVE, CandcPtbPos.ADJECTIVE_SUPERLATIVE),
+			POS.ADVERB, ImmutableList.of(CandcPtbPos.ADVERB_COMPARATIVE, CandcPtbPos.ADVERB_SUPERLATIVE));
+
+	// SimpleNLG's lexicon doesn't promise to be thread-safe, so each thread gets its own. They're cheap to make.
+	private final ThreadLocal<Lexicon> lexicon = new ThreadLocal<Lexicon>() {
+		@Override
+		protected Lexicon initialValue() {
+			return new Lexicon();
+		}
+	};
+
+	private final LoadingCache<Entry<Pos, String>, String> cache;
+
+	/**
+	 * @param maximumSize most inflections to hold, least recently used going first. Allow for a preloaded table, or it'll be
+	 * evicted as it's read.
+	 */
+	public Inflector(long maximumSize) {
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats()
+				.build(new CacheLoader<Entry<Pos, String>, String>() {
+					@Override
+					public String load(Entry<Pos, String> posLemma) {
+						return findInflection(posLemma.getKey(), posLemma.getValue());
+					}
+				});
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the POS can't be inflected.
+	 */
+	public String inflect(Pos pos, String lemma) {
+		try {
+			return cache.getUnchecked(Maps.immutableEntry(pos, lemma));
+		} catch (UncheckedExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/** Uncached. */
+	protected String findInflection(Pos pos, String lemma) {
+		Lexicon lexicon = this.lexicon.get();
+		// Verbs
+		if (pos.equals(CandcPtbPos.VERB_BASE_FORM))
+			return lemma;
+		if (pos.equals(CandcPtbPos.VERB_PAST_TENSE))
+			return lexicon.getPast(lemma);
+		if (pos.equals(CandcPtbPos.VERB_PAST_PARTICIPLE))
+			return lexicon.getPastParticiple(lemma);
+		if (pos.equals(CandcPtbPos.VERB_GERUND_OR_PRESENT_PARTICIPLE))
+			return lexicon.getPresentParticiple(lemma);
+		if (pos.equals(CandcPtbPos.VERB_3SG_PRESENT))
+			return lexicon.getPresent3SG(lemma);
+		if (pos.equals(CandcPtbPos.VERB_NON_3SG_PRESENT))
+			return lemma;
+		// Nouns
+		if (pos.descendentOf(GenericPos.NOUN_SINGULAR_GENERAL))
+			return lemma;
+		if (pos.descendentOf(GenericPos.NOUN_PLURAL_GENERAL))
+			return lexicon.getPlural(lemma);
+		// Adjectives and adverbs
+		if (pos.descendentOf(GenericPos.ADJECTIVE_GENERAL) || pos.descendentOf(GenericPos.ADVERB_GENERAL)) {
+			if (pos.descendentOf(GenericPos.COMPARATIVE_GENERAL))
+				return lexicon.getComparative(lemma);
+			if (pos.descendentOf(GenericPos.SUPERLATIVE_GENERAL))
+				return lexicon.getSuperlative(lemma);
+			return lemma; // basic form of adverb/adjective
+		}
+		// TODO maybe do CLAWS2 tags if needed...
+		throw new IllegalArgumentException("Unable to infect: "+lemma);
+	}
+
+	/** Hit and miss counts. */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * Fills the cache from a table written by {@link #writeInflections(File, Map)}.
+	 *
+	 * @return number of inflections read.
+	 */
+	public int preloadInflections(File table) throws IOException {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(table), Charsets.UTF_8));
+			Map<Entry<Pos, String>, String> inflections = new HashMap<Entry<Pos, String>, String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length != 3)
+					throw new IOException("Malformed line in inflection table " + table + ": " + line);
+				inflections.put(Maps.immutableEntry(CandcPtbPos.valueOfByLabel(fields[0]), fields[1]), fields[2]);
+			}
+			cache.putAll(inflections);
+			LOGGER.info("{} inflections read from {}.", inflections.size(), table);
+			return inflections.size();
+		}
+		finally {
+			if (reader != null)
+				reader.close();
+		}
+	}
+
+	/**
+	 * Writes a table of the {@link #INFLECTED_FORMS} of every single-word lemma given, one <code>tag, lemma, form</code> line
+	 * (tab-separated) each, for {@link #preloadInflections(File)}. The cache is neither read nor filled. Lemmas the lexicon can't
+	 * inflect are left out.
+	 *
+	 * @param lemmas for each WordNet POS.
+	 * @return number of inflections written.
+	 */
+	public int writeInflections(File table, Map<POS, ? extends Iterator<String>> lemmas) throws IOException {
+		BufferedWriter writer = null;
+		int written = 0;
+		int skipped = 0;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(table), Charsets.UTF_8));
+			for (Entry<POS, ? extends Iterator<String>> posLemmas : lemmas.entrySet()) {
+				ImmutableList<CandcPtbPos> forms = INFLECTED_FORMS.get(posLemmas.getKey());
+				if (forms == null)
+					continue;
+				for (Iterator<String> it = posLemmas.getValue(); it.hasNext();) {
+					String lemma = it.next();
+					if (lemma.indexOf('_') != -1)
+						continue; // multi-word
+					String[] inflections = new String[forms.size()];
+					try {
+						for (int i = 0; i < forms.size(); i++) {
+							inflections[i] = findInflection(forms.get(i), lemma);
+						}
+					} catch (RuntimeException e) {
+						LOGGER.warn("Cannot inflect {}: {}", lemma, e.toString());
+						skipped++;
+						continue;
+					}
+					for (int i = 0; i < forms.size(); i++) {
+						writer.write(forms.get(i).getLabel() + '\t' + lemma + '\t' + inflections[i]);
+						writer.newLine();
+						written++;
+					}
+				}
+			}
+		}
+		finally {
+			if (writer != null)
+				writer.close();
+		}
+		if (skipped > 0)
+			LOGGER.info("{} lemmas left out of {}: they couldn't be inflected.", skipped, table);
+		return written;
+	}
+}
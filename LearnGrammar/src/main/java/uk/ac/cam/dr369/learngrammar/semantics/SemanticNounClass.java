@@ -2,19 +2,24 @@ package uk.ac.cam.dr369.learngrammar.semantics;
 
 import static uk.ac.cam.dr369.learngrammar.model.NamedEntityClass.PERSON;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 
 import uk.ac.cam.dr369.learngrammar.model.GenericPos;
 import uk.ac.cam.dr369.learngrammar.model.NamedEntityClass;
 import uk.ac.cam.dr369.learngrammar.model.Token;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableMap;
 
+import edu.mit.jwi.IDictionary;
+import edu.mit.jwi.item.IIndexWord;
 import edu.mit.jwi.item.ISynset;
 import edu.mit.jwi.item.ISynsetID;
 import edu.mit.jwi.item.IWord;
+import edu.mit.jwi.item.POS;
 import edu.mit.jwi.item.Pointer;
 
 /**
@@ -27,6 +32,9 @@ public enum SemanticNounClass {
 	
 	private final List<String> wordNetHypernyms;
 	
+	/** Classes of WordNet's common nouns: from a snapshot (see {@link #preloadCommonNounClasses(Map)}), or built on first use. */
+	private static volatile Map<String, SemanticNounClass> commonNounClasses;
+	
 	private SemanticNounClass(String... wordNetHypernyms) {
 		this.wordNetHypernyms = ImmutableList.copyOf(wordNetHypernyms);
 	}
@@ -48,26 +56,84 @@ public enum SemanticNounClass {
 
 	private static SemanticNounClass getCommonNounClass(Token token) {
 		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
-		List<IWord> words = wnsa.getWords(token);
-		if (words.isEmpty())
-			return null;
-		IWord word = words.get(0); // first word sense is supposed to be the most common
-		
-		Queue<ISynsetID> synsetIds = Lists.newLinkedList();
-		ISynset synset = word.getSynset();
-		
-		synsetIds.addAll(synset.getRelatedSynsets(Pointer.HYPERNYM));
-		
-		while (!synsetIds.isEmpty()) {
-			synset = wnsa.getDictionary().getSynset(synsetIds.poll());
-			words = synset.getWords();
-			for (IWord w : words) {
-				if (SOMEBODY.wordNetHypernyms.contains(w.getLemma()))
-					return SOMEBODY;
+		return getCommonNounClasses().get(wnsa.getIndexLemma(token)); // null if not in WordNet
+	}
+	
+	/** Class of every common noun in WordNet, by index lemma. Built on first use, unless preloaded. */
+	public static Map<String, SemanticNounClass> getCommonNounClasses() {
+		Map<String, SemanticNounClass> table = commonNounClasses;
+		if (table == null) {
+			synchronized (SemanticNounClass.class) {
+				table = commonNounClasses;
+				if (table == null) {
+					table = CommonNounClasses.build();
+					commonNounClasses = table;
+				}
+			}
+		}
+		return table;
+	}
+	
+	/** Uses a table previously got from {@link #getCommonNounClasses()}, rather than building it from WordNet - or the table in use. */
+	public static synchronized void preloadCommonNounClasses(Map<String, SemanticNounClass> table) {
+		commonNounClasses = ImmutableMap.copyOf(table);
+	}
+	
+	/** Forgets the table in use, whether preloaded or built: the next use builds it again, unless another is preloaded first. */
+	public static synchronized void resetCommonNounClasses() {
+		commonNounClasses = null;
+	}
+	
+	/** Works out the class of every noun in WordNet. */
+	private static final class CommonNounClasses {
+		private static Map<String, SemanticNounClass> build() {
+			WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+			try {
+				wnsa.awaitLoaded(); // every noun is visited, so it's well worth having WordNet in memory
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // carry on from disk
+			}
+			IDictionary dictionary = wnsa.getDictionary();
+			Map<ISynsetID, Boolean> somebodySynsets = new HashMap<ISynsetID, Boolean>();
+			ImmutableMap.Builder<String, SemanticNounClass> table = ImmutableMap.builder();
+			for (Iterator<IIndexWord> it = dictionary.getIndexWordIterator(POS.NOUN); it.hasNext();) {
+				IIndexWord indexWord = it.next();
+				// first word sense is supposed to be the most common
+				ISynset synset = dictionary.getWord(indexWord.getWordIDs().get(0)).getSynset();
+				SemanticNounClass nounClass = SOMETHING;
+				for (ISynsetID hypernym : synset.getRelatedSynsets(Pointer.HYPERNYM)) {
+					if (isSomebody(dictionary, hypernym, somebodySynsets)) {
+						nounClass = SOMEBODY;
+						break;
+					}
+				}
+				table.put(indexWord.getLemma(), nounClass);
+			}
+			return table.build();
+		}
+		/** Whether a synset, or any of its hypernyms, is one of SOMEBODY's. Memoised, as nouns share most of their hypernyms. */
+		private static boolean isSomebody(IDictionary dictionary, ISynsetID synsetId, Map<ISynsetID, Boolean> memo) {
+			Boolean somebody = memo.get(synsetId);
+			if (somebody == null) {
+				somebody = false;
+				ISynset synset = dictionary.getSynset(synsetId);
+				for (IWord w : synset.getWords()) {
+					if (SOMEBODY.wordNetHypernyms.contains(w.getLemma())) {
+						somebody = true;
+						break;
+					}
+				}
+				if (!somebody) {
+					for (ISynsetID hypernym : synset.getRelatedSynsets(Pointer.HYPERNYM)) {
+						if (isSomebody(dictionary, hypernym, memo)) {
+							somebody = true;
+							break;
+						}
+					}
+				}
+				memo.put(synsetId, somebody);
 			}
-			synsetIds.addAll(synset.getRelatedSynsets(Pointer.HYPERNYM));
+			return somebody;
 		}
-		
-		return SOMETHING;
 	}
 }
\ No newline at end of file
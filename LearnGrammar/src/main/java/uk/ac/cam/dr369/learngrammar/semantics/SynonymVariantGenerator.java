@@ -0,0 +1,125 @@
+package uk.ac.cam.dr369.learngrammar.semantics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import uk.ac.cam.dr369.learngrammar.model.GenericPos;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import edu.mit.jwi.item.IWord;
+import edu.mit.jwi.item.IWordID;
+import edu.mit.jwi.item.POS;
+
+/**
+ * Makes new sentences from an existing one by swapping a single word for a WordNet synonym of the same sense, as
+ * {@link WordnetSemanticAnalyser#findSense(Token, String)}, {@link WordnetSemanticAnalyser#getSynonyms(Token, IWord)} and
+ * {@link WordnetSemanticAnalyser#reinflect(Token, IWord)} would. The sense chosen for a usage of a word, and the synonyms
+ * appropriate to that usage, are cached: they depend only on the word's lemma, its WordNet POS and (for verbs) the verb frames it
+ * takes, so they're shared across sentences.
+ *
+ * @author duncan.roberts
+ */
+public class SynonymVariantGenerator {
+	private static final int CACHE_SIZE = 20000;
+
+	private final WordnetSemanticAnalyser analyser;
+
+	private final Cache<Entry<Entry<String, POS>, Set<VerbFrame>>, Optional<IWord>> senses =
+		CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+	private final Cache<Entry<IWordID, Set<VerbFrame>>, List<IWord>> synonyms =
+		CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+	public SynonymVariantGenerator() {
+		this(WordnetSemanticAnalyser.getInstance());
+	}
+	public SynonymVariantGenerator(WordnetSemanticAnalyser analyser) {
+		this.analyser = analyser;
+	}
+
+	/**
+	 * @return every sentence made by replacing one word of <code>sentence</code> with a synonym, word by word in sentence order.
+	 */
+	public List<DependencyStructure> generate(DependencyStructure sentence) {
+		List<DependencyStructure> variants = new ArrayList<DependencyStructure>();
+		for (Token token : sentence.getTokens()) {
+			List<Token> replacements = getReplacements(token);
+			if (!replacements.isEmpty())
+				variants.addAll(sentence.substituteEach(token, replacements));
+		}
+		return variants;
+	}
+
+	/**
+	 * @return synonyms of <code>token</code>, inflected to match it. Multi-word synonyms, and those inflecting to the same word, are
+	 * left out.
+	 */
+	public List<Token> getReplacements(Token token) {
+		final POS pos = WordnetSemanticAnalyser.toWordnetPosTag(token);
+		if (pos == null || token.getIndex() < 0 || token.pos().descendentOf(GenericPos.NOUN_PROPER_GENERAL))
+			return ImmutableList.of();
+		final Set<VerbFrame> frames = token.isVerb() ? ImmutableSet.copyOf(WordnetVerbFrame.getAcceptingFrames(token)) :
+			ImmutableSet.<VerbFrame>of();
+		if (token.isVerb() && frames.isEmpty())
+			return ImmutableList.of(); // no sense can match
+
+		IWord sense = getSense(token, pos, frames);
+		if (sense == null)
+			return ImmutableList.of();
+		List<Token> replacements = new ArrayList<Token>();
+		for (IWord synonym : getSynonyms(token, sense, frames)) {
+			if (synonym.getLemma().indexOf('_') != -1)
+				continue;
+			Token replacement;
+			try {
+				replacement = analyser.reinflect(token, synonym);
+			}
+			catch (IllegalArgumentException iae) { // can't inflect for this POS
+				continue;
+			}
+			if (!replacement.getWord().equalsIgnoreCase(token.getWord()))
+				replacements.add(replacement);
+		}
+		return replacements;
+	}
+
+	private IWord getSense(final Token token, POS pos, final Set<VerbFrame> frames) {
+		try {
+			return senses.get(Maps.immutableEntry(Maps.immutableEntry(analyser.getIndexLemma(token), pos), frames),
+					new Callable<Optional<IWord>>() {
+				@Override
+				public Optional<IWord> call() {
+					List<IWord> candidates = analyser.getWords(token);
+					return candidates.isEmpty() ? Optional.<IWord>absent() :
+						Optional.fromNullable(analyser.findSense(candidates, token, frames));
+				}
+			}).orNull();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Unable to find sense of " + token, e.getCause());
+		}
+	}
+
+	private List<IWord> getSynonyms(final Token token, final IWord sense, final Set<VerbFrame> frames) {
+		try {
+			return synonyms.get(Maps.immutableEntry(sense.getID(), frames), new Callable<List<IWord>>() {
+				@Override
+				public List<IWord> call() {
+					return ImmutableList.copyOf(analyser.getSynonyms(token, sense, frames));
+				}
+			});
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Unable to find synonyms of " + sense, e.getCause());
+		}
+	}
+}
@@ -1,34 +1,46 @@
 package uk.ac.cam.dr369.learngrammar.semantics;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import simplenlg.lexicon.Lexicon;
 import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
 import uk.ac.cam.dr369.learngrammar.model.GenericPos;
 import uk.ac.cam.dr369.learngrammar.model.Pos;
 import uk.ac.cam.dr369.learngrammar.model.Token;
 import uk.ac.cam.dr369.learngrammar.util.PropertiesFacade;
-import uk.ac.cam.dr369.learngrammar.util.Utils;
 
+import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
-import edu.mit.jwi.Dictionary;
 import edu.mit.jwi.IDictionary;
+import edu.mit.jwi.IRAMDictionary;
+import edu.mit.jwi.RAMDictionary;
+import edu.mit.jwi.data.ILoadPolicy;
 import edu.mit.jwi.item.IIndexWord;
 import edu.mit.jwi.item.ISynset;
 import edu.mit.jwi.item.ISynsetID;
@@ -76,37 +88,129 @@ public final class WordnetSemanticAnalyser {
 	
 	static final ImmutableSet<? extends Pos> POS_NP = ImmutableSet.of(GenericPos.ARGUMENT_GENERAL);
 
-	private static WordnetSemanticAnalyser INSTANCE = null;
+	private static final int LEMMA_CACHE_SIZE = 50000;
+	/** Total synsets held by the relation and closure caches. */
+	private static final long RELATION_CACHE_WEIGHT = 2000000L;
+
+	/**
+	 * Room for the whole table {@link #writeInflections(File)} writes - some 215,000 inflections - so that preloading it evicts nothing,
+	 * while lemmas from elsewhere can't grow the cache without bound.
+	 */
+	private static final int INFLECTION_CACHE_SIZE = 250000;
+
+	/** Initialised by the JVM on first use of getInstance(), which makes the construction thread-safe without locking. */
+	private static final class InstanceHolder {
+		static final WordnetSemanticAnalyser INSTANCE = new WordnetSemanticAnalyser();
+	}
 	
 	// MIT Java WordNet Interface objects
-	private IDictionary dictionary;
+	private final IRAMDictionary dictionary;
+	private final CountDownLatch loaded = new CountDownLatch(1); // counted down once the load's over, whether or not it worked
 
-	private IStemmer stemmer;
-	// Aberdeen SimpleNLG objects
-	private Lexicon lexicon;
+	// JWI's stemmer doesn't promise to be thread-safe, so each thread gets its own. They're cheap to make.
+	private final ThreadLocal<IStemmer> stemmer = new ThreadLocal<IStemmer>() {
+		@Override
+		protected IStemmer initialValue() {
+			return new WordnetStemmer(dictionary);
+		}
+	};
+	
+	// Every token built without a lemma is lemmatised, and English vocabulary is Zipfian: most words are seen over and over.
+	private final LoadingCache<Entry<String, POS>, List<String>> lemmaCache = CacheBuilder.newBuilder()
+			.maximumSize(LEMMA_CACHE_SIZE)
+			.recordStats()
+			.build(new CacheLoader<Entry<String, POS>, List<String>>() {
+				@Override
+				public List<String> load(Entry<String, POS> wordPos) {
+					return findLemmas(wordPos.getKey(), wordPos.getValue());
+				}
+			});
+	
+	// Synonyms are reinflected to the original word's POS over and over when generating distractors.
+	private final Inflector inflector = new Inflector(INFLECTION_CACHE_SIZE);
 	
+	// Synsets directly related to a synset by a pointer, along with their words.
+	private final LoadingCache<Entry<ISynsetID, Pointer>, Map<ISynset, List<IWord>>> relationCache = CacheBuilder.newBuilder()
+			.maximumWeight(RELATION_CACHE_WEIGHT)
+			.weigher(new Weigher<Entry<ISynsetID, Pointer>, Map<ISynset, List<IWord>>>() {
+				@Override
+				public int weigh(Entry<ISynsetID, Pointer> synsetPointer, Map<ISynset, List<IWord>> related) {
+					return related.size() + 1;
+				}
+			})
+			.recordStats()
+			.build(new CacheLoader<Entry<ISynsetID, Pointer>, Map<ISynset, List<IWord>>>() {
+				@Override
+				public Map<ISynset, List<IWord>> load(Entry<ISynsetID, Pointer> synsetPointer) {
+					return findRelated(synsetPointer.getKey(), synsetPointer.getValue());
+				}
+			});
+	// Synsets reachable from a synset by following a pointer up to some depth. Deeper closures are built from shallower ones.
+	private final LoadingCache<Entry<Entry<ISynsetID, Pointer>, Integer>, Set<ISynsetID>> closureCache = CacheBuilder.newBuilder()
+			.maximumWeight(RELATION_CACHE_WEIGHT)
+			.weigher(new Weigher<Entry<Entry<ISynsetID, Pointer>, Integer>, Set<ISynsetID>>() {
+				@Override
+				public int weigh(Entry<Entry<ISynsetID, Pointer>, Integer> synsetPointerDepth, Set<ISynsetID> closure) {
+					return closure.size() + 1;
+				}
+			})
+			.recordStats()
+			.build(new CacheLoader<Entry<Entry<ISynsetID, Pointer>, Integer>, Set<ISynsetID>>() {
+				@Override
+				public Set<ISynsetID> load(Entry<Entry<ISynsetID, Pointer>, Integer> synsetPointerDepth) {
+					return findClosure(synsetPointerDepth.getKey().getKey(), synsetPointerDepth.getKey().getValue(),
+							synsetPointerDepth.getValue());
+				}
+			});
+	
+	/**
+	 * WordNet is read into memory on a background thread. Until it's loaded, lookups go to the dictionary files as before - see
+	 * {@link #isLoaded()}. The thread is our own rather than JWI's background load, which can't be waited for: once JWI's loader has
+	 * started, {@link IRAMDictionary#load(boolean) load(true)} returns straight away.
+	 */
 	private WordnetSemanticAnalyser() {
-		dictionary = new Dictionary(PropertiesFacade.getInstance().getWordnetDictionaryUrl());
+		dictionary = new RAMDictionary(PropertiesFacade.getInstance().getWordnetDictionaryUrl(), ILoadPolicy.NO_LOAD);
 		try {
 			dictionary.open();
-			stemmer = new WordnetStemmer(dictionary);
-			lexicon = new Lexicon();
 		}
 		catch (IOException ioe) {
 			throw new RuntimeException("Cannot open WordNet dictionary!", ioe); // TODO work out why not reported to user. Separate thread?
 		}
+		Thread loader = new Thread("wordnet-loader") {
+			@Override
+			public void run() {
+				try {
+					dictionary.load(true); // starts JWI's loader, and waits for it
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					if (!dictionary.isLoaded())
+						LOGGER.warn("Unable to load WordNet into memory; lookups will carry on going to the dictionary files.");
+					loaded.countDown();
+				}
+			}
+		};
+		loader.setDaemon(true);
+		loader.start();
+		LOGGER.info("Loading WordNet into memory in the background.");
 	}
 	
 	public static WordnetSemanticAnalyser getInstance() {
-		if (INSTANCE == null) {
-			INSTANCE = new WordnetSemanticAnalyser();
-		}
-		return INSTANCE;
+		return InstanceHolder.INSTANCE;
 	}
 
 	public IDictionary getDictionary() {
 		return dictionary;
 	}
+	/** Whether WordNet has been loaded into memory, so that lookups no longer touch the disk. */
+	public boolean isLoaded() {
+		return dictionary.isLoaded();
+	}
+	/** Blocks until WordNet has been loaded into memory - or has failed to load, when lookups carry on going to disk. */
+	public void awaitLoaded() throws InterruptedException {
+		loaded.await();
+	}
 	
 	/**
 	 * Find base form of a word - e.g. 'thought' becomes 'think', 'mice' becomes 'mouse', 'cows' becomes 'cow'.
@@ -128,6 +232,9 @@ public final class WordnetSemanticAnalyser {
 	 * Find base form of a word - e.g. 'thought' becomes 'think', 'mice' becomes 'mouse', 'cows' becomes 'cow'.
 	 */
 	private List<String> lemmatise(String word, POS pos) {
+		return lemmaCache.getUnchecked(Maps.immutableEntry(word, pos));
+	}
+	private List<String> findLemmas(String word, POS pos) {
 		// The stemmer doesn't stem common apostrophe-abbreviated words, like 'll -> will. So manual hackery:
 		if (POS_STEMMER.contains(word, pos))
 			return ImmutableList.of(POS_STEMMER.get(word, pos));
@@ -138,15 +245,25 @@ public final class WordnetSemanticAnalyser {
 		
 		List<String> words = null;
 		try {
-			words = stemmer.findStems(word, pos);
+			words = stemmer.get().findStems(word, pos);
 		} catch (IllegalArgumentException e) {
 			return ImmutableList.of(word);
 		}
 		if (words.isEmpty()) // no lemma found, so fall back to unlemmatised word
 			return ImmutableList.of(word);
-		return words;
+		return ImmutableList.copyOf(words); // cached, so mustn't be changed
+	}
+	/** Hit and miss counts for lemmatisation. */
+	public CacheStats getLemmaCacheStats() {
+		return lemmaCache.stats();
 	}
 		
+	/**
+	 * The lemma WordNet indexes a token under, for tables keyed on WordNet's own lemmas. Normalised as JWI does for index words.
+	 */
+	String getIndexLemma(Token token) {
+		return lemmatise(token.getWord(), toWordnetPosTag(token)).get(0).toLowerCase().trim().replaceAll("\\s+", "_");
+	}
 	public List<IWord> getWords(Token token) {
 		POS pos = toWordnetPosTag(token);
 		IIndexWord idxWord = dictionary.getIndexWord(lemmatise(token.getWord(), pos).get(0), pos);
@@ -159,7 +276,7 @@ public final class WordnetSemanticAnalyser {
 		return words;
 	}
 	
-	private static POS toWordnetPosTag(Token token) {
+	static POS toWordnetPosTag(Token token) {
 		if (token.isVerb())
 			return POS.VERB;
 		if (token.isAdverb())
@@ -171,22 +288,21 @@ public final class WordnetSemanticAnalyser {
 		return null;
 	}
 	
-	private IWord findSense(List<IWord> candidates, Token original, String sentence) {
+	/**
+	 * @param originalVerbFrames frames accepting <code>original</code>, if it's a verb.
+	 */
+	IWord findSense(List<IWord> candidates, Token original, Set<VerbFrame> originalVerbFrames) {
 		if (!original.isVerb())
 			return candidates.get(0); // no filtering if not a verb. TODO use Simplified Lesk?
 		
-		Set<VerbFrame> originalVerbFrames = WordnetVerbFrame.getAcceptingFrames(original);
 		if (originalVerbFrames.size() == 0) {
 			return null;
 		}
+		long originalMask = WordnetVerbFrame.toMask(originalVerbFrames);
 		List<IWord> appropriateSenses = new ArrayList<IWord>();
 		int x = 0;
 		for (IWord candidateSense : candidates) {
-			LOGGER.debug("Considering whether sense {} has an appropriate verb subcat frame...", x);
-			List<IVerbFrame> synonymVerbFrames = candidateSense.getVerbFrames();
-			Set<String> overlap = getOverlappingVerbFrames(originalVerbFrames, synonymVerbFrames,
-					original.getLemma(), "sense "+x);
-			if (overlap.size() > 0) {
+			if (hasOverlappingVerbFrames(originalMask, candidateSense, original.getLemma(), "sense "+x)) {
 				appropriateSenses.add(candidateSense);
 			}
 			x++;
@@ -198,14 +314,22 @@ public final class WordnetSemanticAnalyser {
 	
 	public IWord findSense(Token token, String sentence) {
 		List<IWord> candidates = getWords(token);
-		return findSense(candidates, token, sentence);
+		return findSense(candidates, token, token.isVerb() ? WordnetVerbFrame.getAcceptingFrames(token) : null);
 	}
 	
 	public List<IWord> getSynonyms(Token token, IWord word) {
+		// The original's frames are the same for every synonym; work them out once.
+		return getSynonyms(token, word, token.isVerb() ? WordnetVerbFrame.getAcceptingFrames(token) : null);
+	}
+	
+	/**
+	 * @param originalVerbFrames frames accepting <code>token</code>, if it's a verb.
+	 */
+	List<IWord> getSynonyms(Token token, IWord word, Set<VerbFrame> originalVerbFrames) {
 		List<IWord> synonyms = new ArrayList<IWord>(word.getSynset().getWords());
 		for (ListIterator<IWord> li = synonyms.listIterator(); li.hasNext();) {
 			IWord syn = li.next();
-			if (syn == word || !isAppropriateSynonym(token, syn))
+			if (syn == word || !isAppropriateSynonym(token, originalVerbFrames, syn))
 				li.remove();
 		}
 		return synonyms;
@@ -219,87 +343,156 @@ public final class WordnetSemanticAnalyser {
 		return getSubSuper(word, false);
 	}
 	
+	/**
+	 * Synsets reached by following hypernym pointers from <code>synset</code> up to <code>depth</code> times. Excludes
+	 * <code>synset</code> itself.
+	 */
+	public Set<ISynsetID> getHypernymClosure(ISynsetID synset, int depth) {
+		return closureCache.getUnchecked(Maps.immutableEntry(Maps.immutableEntry(synset, Pointer.HYPERNYM), depth));
+	}
+	
+	/**
+	 * Synsets reached by following hyponym pointers from <code>synset</code> up to <code>depth</code> times. Excludes
+	 * <code>synset</code> itself.
+	 */
+	public Set<ISynsetID> getHyponymClosure(ISynsetID synset, int depth) {
+		return closureCache.getUnchecked(Maps.immutableEntry(Maps.immutableEntry(synset, Pointer.HYPONYM), depth));
+	}
+	
+	/** Hit and miss counts for synset relations and closures. */
+	public CacheStats getRelationCacheStats() {
+		return relationCache.stats().plus(closureCache.stats());
+	}
+	
+	/** Cached, so not modifiable. */
 	private Map<ISynset, List<IWord>> getSubSuper(IWord word, boolean sup) {
-		ISynset synset = word.getSynset();
-		List<ISynsetID> hypernyms = synset.getRelatedSynsets(sup ? Pointer.HYPERNYM : Pointer.HYPONYM);
-		Map<ISynset, List<IWord>> m = new HashMap<ISynset, List<IWord>>();
-		for(ISynsetID sid : hypernyms) {
+		return relationCache.getUnchecked(Maps.immutableEntry(word.getSynset().getID(), sup ? Pointer.HYPERNYM : Pointer.HYPONYM));
+	}
+	
+	private Map<ISynset, List<IWord>> findRelated(ISynsetID synsetId, Pointer pointer) {
+		Map<ISynset, List<IWord>> m = new LinkedHashMap<ISynset, List<IWord>>(); // WordNet can list a related synset twice
+		for (ISynsetID sid : dictionary.getSynset(synsetId).getRelatedSynsets(pointer)) {
 			ISynset ss = dictionary.getSynset(sid);
-			List<IWord> words = ss.getWords();
-			m.put(ss, words);
+			m.put(ss, ss.getWords());
+		}
+		return ImmutableMap.copyOf(m);
+	}
+	
+	private Set<ISynsetID> findClosure(ISynsetID synsetId, Pointer pointer, int depth) {
+		if (depth <= 0)
+			return ImmutableSet.of();
+		ImmutableSet.Builder<ISynsetID> closure = ImmutableSet.builder();
+		for (ISynset related : relationCache.getUnchecked(Maps.immutableEntry(synsetId, pointer)).keySet()) {
+			closure.add(related.getID());
+			closure.addAll(closureCache.getUnchecked(Maps.immutableEntry(Maps.immutableEntry(related.getID(), pointer), depth - 1)));
 		}
-		return m;
+		return closure.build();
 	}
 	
 	public Token reinflect(Token original, IWord synonym) {
 		int idx = original.getIndex();
 		Pos posTag = original.pos();
 		String supertag = original.getSupertag();
-		String word = inflect(original.pos(), synonym.getLemma());
+		String word = inflector.inflect(original.pos(), synonym.getLemma());
 		return new Token(synonym.getLemma(), null, idx, posTag, supertag, word);
 	}
 	
-	private String inflect(Pos pos, String lemma) {
-		// Verbs
-		if (pos.equals(CandcPtbPos.VERB_BASE_FORM))
-			return lemma;
-		if (pos.equals(CandcPtbPos.VERB_PAST_TENSE))
-			return lexicon.getPast(lemma);
-		if (pos.equals(CandcPtbPos.VERB_PAST_PARTICIPLE))
-			return lexicon.getPastParticiple(lemma);
-		if (pos.equals(CandcPtbPos.VERB_GERUND_OR_PRESENT_PARTICIPLE))
-			return lexicon.getPresentParticiple(lemma);
-		if (pos.equals(CandcPtbPos.VERB_3SG_PRESENT))
-			return lexicon.getPresent3SG(lemma);
-		if (pos.equals(CandcPtbPos.VERB_NON_3SG_PRESENT))
-			return lemma;
-		// Nouns
-		if (pos.descendentOf(GenericPos.NOUN_SINGULAR_GENERAL))
-			return lemma;
-		if (pos.descendentOf(GenericPos.NOUN_PLURAL_GENERAL))
-			return lexicon.getPlural(lemma);
-		// Adjectives and adverbs
-		if (pos.descendentOf(GenericPos.ADJECTIVE_GENERAL) || pos.descendentOf(GenericPos.ADVERB_GENERAL)) {
-			if (pos.descendentOf(GenericPos.COMPARATIVE_GENERAL))
-				return lexicon.getComparative(lemma);
-			if (pos.descendentOf(GenericPos.SUPERLATIVE_GENERAL))
-				return lexicon.getSuperlative(lemma);
-			return lemma; // basic form of adverb/adjective
+	/** Hit and miss counts for inflection. */
+	public CacheStats getInflectionCacheStats() {
+		return inflector.getStats();
+	}
+	/**
+	 * Fills the inflection cache from a table written by {@link #writeInflections(File)}, so that reinflecting doesn't need the
+	 * lexicon at all for words in the table.
+	 * 
+	 * @return number of inflections read.
+	 */
+	public int preloadInflections(File table) throws IOException {
+		return inflector.preloadInflections(table);
+	}
+	/**
+	 * Writes a table of the inflected forms of every single-word verb, noun, adjective and adverb in WordNet, one
+	 * <code>tag, lemma, form</code> line (tab-separated) each, for {@link #preloadInflections(File)}. Lemmas SimpleNLG can't inflect
+	 * are left out, and the inflection cache isn't touched.
+	 * 
+	 * @return number of inflections written.
+	 */
+	public int writeInflections(File table) throws IOException {
+		Map<POS, Iterator<String>> lemmas = new LinkedHashMap<POS, Iterator<String>>();
+		for (POS pos : Inflector.INFLECTED_FORMS.keySet()) {
+			lemmas.put(pos, Iterators.transform(dictionary.getIndexWordIterator(pos), new Function<IIndexWord, String>() {
+				@Override
+				public String apply(IIndexWord indexWord) {
+					return indexWord.getLemma();
+				}
+			}));
 		}
-		// TODO maybe do CLAWS2 tags if needed...
-		throw new IllegalArgumentException("Unable to infect: "+lemma);
+		return inflector.writeInflections(table, lemmas);
 	}
 	
 	public boolean isAppropriateSynonym(Token original, IWord synonym) {
+		return isAppropriateSynonym(original, original.isVerb() ? WordnetVerbFrame.getAcceptingFrames(original) : null, synonym);
+	}
+	
+	private boolean isAppropriateSynonym(Token original, Set<VerbFrame> originalVerbFrames, IWord synonym) {
 		// Coarse-grained POS tag matching
 		if (!toWordnetPosTag(original).equals(synonym.getPOS()))
 			return false;
 		
 		// Verb subcategorisation frame checking
 		if (original.isVerb()) {
-			Set<VerbFrame> originalVerbFrames = WordnetVerbFrame.getAcceptingFrames(original);
-			List<IVerbFrame> synonymVerbFrames = synonym.getVerbFrames();
-			Set<String> overlappingVfStrs = getOverlappingVerbFrames(originalVerbFrames, synonymVerbFrames,
-					original.getLemma(), synonym.getLemma());
-			if (overlappingVfStrs.size() == 0)
+			if (!hasOverlappingVerbFrames(WordnetVerbFrame.toMask(originalVerbFrames), synonym, original.getLemma(), synonym.getLemma()))
 				return false;
 		}
 		return true;
 	}
 	
-	private Set<String> getOverlappingVerbFrames(Set<VerbFrame> originalVerbFrames, List<IVerbFrame> synonymVerbFrames,
-			String originalWord, String replacementWord) {
-		List<String> originalVfStrs = Lists.newArrayList();
-		List<String> synonymVfStrs = Lists.newArrayList();
+	private boolean hasOverlappingVerbFrames(long originalMask, IWord sense, String originalWord, String replacementWord) {
+		long overlap = originalMask & getVerbFrameMask(sense);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Verb frames matching the usage of {} in the above sentence: {}", originalWord, WordnetVerbFrame.fromMask(originalMask));
+			LOGGER.debug("Verb frames for {}: {}", replacementWord, WordnetVerbFrame.fromMask(getVerbFrameMask(sense)));
+			LOGGER.debug("Overlap: {}", WordnetVerbFrame.fromMask(overlap));
+		}
+		return overlap != 0;
+	}
+	
+	/**
+	 * @return the verb frames WordNet lists for a sense, as a {@link WordnetVerbFrame#toMask(Iterable) bitmask}.
+	 */
+	long getVerbFrameMask(IWord sense) {
+		Long mask = VerbFrameIndex.MASKS.get(sense.getID());
+		return mask != null ? mask : toMask(sense.getVerbFrames());
+	}
+	
+	private static long toMask(List<IVerbFrame> verbFrames) {
+		long mask = 0L;
+		for (IVerbFrame verbFrame : verbFrames) {
+			WordnetVerbFrame frame = WordnetVerbFrame.forDescription(verbFrame.getTemplate());
+			if (frame != null)
+				mask |= 1L << frame.ordinal();
+		}
+		return mask;
+	}
+	
+	/** Verb frames of every verb sense in WordNet, worked out once - on first use. */
+	private static final class VerbFrameIndex {
+		private static final Map<IWordID, Long> MASKS = build();
 		
-		for (VerbFrame ovf : originalVerbFrames)
-			originalVfStrs.add(ovf.getDescription());
-		LOGGER.debug("Verb frames matching the usage of {} in the above sentence: {}", originalWord, originalVfStrs);
-		for (IVerbFrame svf : synonymVerbFrames)
-			synonymVfStrs.add(svf.getTemplate());
-		LOGGER.debug("Verb frames for {}: {}", replacementWord, synonymVfStrs);
-		Set<String> overlappingVfStrs = Utils.intersection(originalVfStrs, synonymVfStrs);
-		LOGGER.debug("Overlap: {}", overlappingVfStrs);
-		return overlappingVfStrs;
+		private static Map<IWordID, Long> build() {
+			WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+			try {
+				wnsa.awaitLoaded(); // every verb is visited, so it's well worth having WordNet in memory
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // carry on from disk
+			}
+			ImmutableMap.Builder<IWordID, Long> masks = ImmutableMap.builder();
+			for (Iterator<ISynset> it = wnsa.dictionary.getSynsetIterator(POS.VERB); it.hasNext();) {
+				for (IWord word : it.next().getWords()) {
+					masks.put(word.getID(), toMask(word.getVerbFrames()));
+				}
+			}
+			return masks.build();
+		}
 	}
 }
\ No newline at end of file
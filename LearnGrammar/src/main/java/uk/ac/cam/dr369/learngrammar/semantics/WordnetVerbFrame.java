@@ -24,9 +24,13 @@ import static uk.ac.cam.dr369.learngrammar.semantics.SemanticNounClass.SOMETHING
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import uk.ac.cam.dr369.learngrammar.model.Pos;
@@ -383,6 +387,31 @@ public enum WordnetVerbFrame implements VerbFrame {
 			new ConcreteVerbFrameConstraint(SECOND_OBJECT, false)
 		);
 	
+	/**
+	 * Frames by the verb POS they accept. Most frames only take a non-gerund, non-infinitive verb, so indexing on POS up front means
+	 * {@link #getAcceptingFrames(Token)} only walks the verb's GRs for frames that could possibly accept it.
+	 */
+	private static final ImmutableListMultimap<Pos, WordnetVerbFrame> FRAMES_BY_VERB_TYPE;
+	static {
+		ImmutableListMultimap.Builder<Pos, WordnetVerbFrame> builder = ImmutableListMultimap.builder();
+		for (WordnetVerbFrame frame : values()) {
+			for (Pos pos : frame.acceptedVerbTypes)
+				builder.put(pos, frame);
+		}
+		FRAMES_BY_VERB_TYPE = builder.build();
+	}
+	/** Frames by description, which is the same as the template of the matching WordNet (JWI) verb frame. */
+	private static final Map<String, WordnetVerbFrame> FRAMES_BY_DESCRIPTION;
+	static {
+		ImmutableMap.Builder<String, WordnetVerbFrame> builder = ImmutableMap.builder();
+		for (WordnetVerbFrame frame : values()) {
+			builder.put(frame.description, frame);
+		}
+		FRAMES_BY_DESCRIPTION = builder.build();
+		if (values().length > Long.SIZE)
+			throw new IllegalStateException("Too many verb frames for a long bitmask");
+	}
+	
 	private final String description;
 	private final Set<Pos> acceptedVerbTypes;
 	private final AndVerbFrameConstraint constraints;
@@ -395,8 +424,36 @@ public enum WordnetVerbFrame implements VerbFrame {
 	
 	public static Set<VerbFrame> getAcceptingFrames(Token verb) {
 		Set<VerbFrame> frames = new HashSet<VerbFrame>();
-		for (VerbFrame frame : values()) {
-			if (frame.accept(verb))
+		for (WordnetVerbFrame frame : FRAMES_BY_VERB_TYPE.get(verb.pos())) {
+			if (frame.constraints.accept(verb)) // POS already matched
+				frames.add(frame);
+		}
+		return frames;
+	}
+
+	/** @return frame with the given description (or JWI template), or null if there isn't one. */
+	public static WordnetVerbFrame forDescription(String description) {
+		return FRAMES_BY_DESCRIPTION.get(description);
+	}
+	
+	/**
+	 * Bitmask of frames, with bit <i>n</i> set for the frame of ordinal <i>n</i>. Frames overlap iff the AND of their masks is non-zero.
+	 * Frames that aren't WordnetVerbFrames are matched on description.
+	 */
+	public static long toMask(Iterable<? extends VerbFrame> frames) {
+		long mask = 0L;
+		for (VerbFrame frame : frames) {
+			WordnetVerbFrame wnFrame = frame instanceof WordnetVerbFrame ? (WordnetVerbFrame) frame : forDescription(frame.getDescription());
+			if (wnFrame != null)
+				mask |= 1L << wnFrame.ordinal();
+		}
+		return mask;
+	}
+	
+	public static Set<WordnetVerbFrame> fromMask(long mask) {
+		Set<WordnetVerbFrame> frames = EnumSet.noneOf(WordnetVerbFrame.class);
+		for (WordnetVerbFrame frame : values()) {
+			if ((mask & (1L << frame.ordinal())) != 0)
 				frames.add(frame);
 		}
 		return frames;
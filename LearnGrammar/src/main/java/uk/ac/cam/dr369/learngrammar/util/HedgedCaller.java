@@ -0,0 +1,186 @@
+package uk.ac.cam.dr369.learngrammar.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Hedged calls, to cut tail latency: starts the primary call and, if it hasn't answered within the given percentile of recent
+ * latencies, a backup call too; whichever succeeds first is the answer. Until there are enough latencies to go on, the backup waits a
+ * fixed initial delay. A failed primary isn't retried as such - the failure is the answer - unless the backup has already started.
+ * <p>
+ * The other call is interrupted, but that only stops it if it responds to interruption. Work done elsewhere - a parse by another
+ * process, a blocking HTTP read - carries on regardless, and its thread is only freed when it finishes or times out.
+ *
+ * @author duncan.roberts
+ */
+public class HedgedCaller {
+	private static final int MIN_SAMPLES = 20;
+
+	private final ListeningExecutorService executor;
+	private final double percentile;
+	private final long minDelayMillis;
+	private final long initialDelayMillis;
+	private final long[] latencyMillis; // ring buffer of recent latencies
+	private int samples;
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	/**
+	 * @param percentile of recent latencies, 0 to 100, after which to send the backup call.
+	 * @param minDelayMillis least time to wait before sending the backup call.
+	 * @param initialDelayMillis time to wait before sending the backup call, while there are too few latencies to go on.
+	 * @param window how many recent latencies to go on.
+	 */
+	public HedgedCaller(double percentile, long minDelayMillis, long initialDelayMillis, int window) {
+		this.percentile = percentile;
+		this.minDelayMillis = minDelayMillis;
+		this.initialDelayMillis = initialDelayMillis;
+		this.latencyMillis = new long[window];
+		executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "hedged-call-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+
+	public <T> T call(Callable<T> primary, Callable<T> backup) throws IOException {
+		calls.incrementAndGet();
+		long start = System.currentTimeMillis();
+		ListenableFuture<T> first = executor.submit(primary);
+		try {
+			T result = first.get(getDelayMillis(), TimeUnit.MILLISECONDS);
+			record(System.currentTimeMillis() - start);
+			return result;
+		} catch (TimeoutException e) {
+			// hedge
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (InterruptedException e) {
+			first.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for call");
+		}
+
+		hedges.incrementAndGet();
+		ListenableFuture<T> second = executor.submit(backup);
+		final SettableFuture<ListenableFuture<T>> winner = SettableFuture.create();
+		final AtomicInteger failures = new AtomicInteger();
+		for (final ListenableFuture<T> future : Arrays.asList(first, second)) {
+			Futures.addCallback(future, new FutureCallback<T>() {
+				@Override
+				public void onSuccess(T result) {
+					winner.set(future);
+				}
+				@Override
+				public void onFailure(Throwable t) {
+					if (failures.incrementAndGet() == 2)
+						winner.setException(t);
+				}
+			});
+		}
+		try {
+			ListenableFuture<T> won = winner.get();
+			if (won == second)
+				hedgeWins.incrementAndGet();
+			record(System.currentTimeMillis() - start); // if the backup won, the least the primary would have taken
+			return won.get();
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for hedged call");
+		}
+		finally {
+			first.cancel(true);
+			second.cancel(true);
+		}
+	}
+
+	/** How long the primary call is now given before the backup call is sent. */
+	public synchronized long getDelayMillis() {
+		if (samples < MIN_SAMPLES)
+			return initialDelayMillis;
+		int n = Math.min(samples, latencyMillis.length);
+		long[] sorted = Arrays.copyOf(latencyMillis, n);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * n);
+		return Math.max(minDelayMillis, sorted[Math.min(n - 1, Math.max(0, rank - 1))]);
+	}
+
+	private synchronized void record(long millis) {
+		latencyMillis[samples++ % latencyMillis.length] = millis;
+		if (samples == Integer.MAX_VALUE) // keep it from wrapping; any multiple of the window will do
+			samples = latencyMillis.length * (MIN_SAMPLES + 1);
+	}
+
+	private static IOException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof IOException)
+			return (IOException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		return new IOException(cause);
+	}
+
+	public Stats getStats() {
+		return new Stats(calls.get(), hedges.get(), hedgeWins.get(), getDelayMillis());
+	}
+
+	/** A snapshot of how often hedging has fired and won. */
+	public static class Stats {
+		private final long calls;
+		private final long hedges;
+		private final long hedgeWins;
+		private final long delayMillis;
+
+		private Stats(long calls, long hedges, long hedgeWins, long delayMillis) {
+			this.calls = calls;
+			this.hedges = hedges;
+			this.hedgeWins = hedgeWins;
+			this.delayMillis = delayMillis;
+		}
+
+		public long getCallCount() {
+			return calls;
+		}
+		/** Calls for which the backup was sent. */
+		public long getHedgeCount() {
+			return hedges;
+		}
+		/** Calls answered by the backup. */
+		public long getHedgeWinCount() {
+			return hedgeWins;
+		}
+		public long getDelayMillis() {
+			return delayMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "calls=" + calls + ", hedged=" + hedges + ", hedge wins=" + hedgeWins + ", delay=" + delayMillis + "ms";
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package uk.ac.cam.dr369.learngrammar.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * HTTP GETs with connect and read timeouts, a cap on concurrent requests and bounded retries (with jittered exponential backoff) on
+ * connection failures, timeouts and 5xx responses. Connections are kept alive and reused between requests: every response body is
+ * read to the end and closed, which returns the connection to the JDK's keep-alive cache rather than dropping it. That cache holds
+ * <code>http.maxConnections</code> (default 5) idle connections per server, so there's little point allowing many more requests at once.
+ *
+ * @author duncan.roberts
+ */
+public class PooledHttpClient {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PooledHttpClient.class);
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final int maxRetries;
+	private final long backoffMillis;
+	private final Semaphore permits;
+
+	/**
+	 * @param maxRetries retries after the first attempt.
+	 * @param backoffMillis upper bound of the first retry's (random) delay; doubles with each retry.
+	 */
+	public PooledHttpClient(int maxConcurrent, int connectTimeoutMillis, int readTimeoutMillis, int maxRetries, long backoffMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.maxRetries = maxRetries;
+		this.backoffMillis = backoffMillis;
+		permits = new Semaphore(maxConcurrent, true);
+	}
+
+	/**
+	 * @return response body, each line terminated by '\n'.
+	 * @throws HttpStatusException if the server's answer is an error (after retries, for 5xx).
+	 */
+	public String get(String url) throws IOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to request " + url);
+		}
+		try {
+			for (int attempt = 0;; attempt++) {
+				try {
+					return fetch(url);
+				} catch (IOException e) {
+					if (attempt >= maxRetries || !isRetryable(e))
+						throw e;
+					long delay = ThreadLocalRandom.current().nextLong((backoffMillis << attempt) + 1);
+					LOGGER.info("Request {} failed ({}); retrying in {}ms.", url, e, delay);
+					try {
+						Thread.sleep(delay);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted retrying " + url);
+					}
+				}
+			}
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	private String fetch(String url) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		conn.setConnectTimeout(connectTimeoutMillis);
+		conn.setReadTimeout(readTimeoutMillis);
+		int status = conn.getResponseCode();
+		if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+			InputStream error = conn.getErrorStream();
+			if (error != null) { // read it all, so that the connection can still be reused
+				try {
+					ByteStreams.toByteArray(error);
+				}
+				finally {
+					error.close();
+				}
+			}
+			throw new HttpStatusException(url, status);
+		}
+		BufferedReader rd = new BufferedReader(new InputStreamReader(conn.getInputStream(), Charsets.UTF_8));
+		try {
+			StringBuilder sb = new StringBuilder();
+			String line;
+			while ((line = rd.readLine()) != null) {
+				sb.append(line);
+				sb.append('\n');
+			}
+			return sb.toString();
+		}
+		finally {
+			rd.close();
+		}
+	}
+
+	private static boolean isRetryable(IOException e) {
+		if (e instanceof HttpStatusException)
+			return ((HttpStatusException) e).getStatus() >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+		return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException; // not if interrupted
+	}
+
+	/** An HTTP error response. */
+	public static class HttpStatusException extends IOException {
+		private static final long serialVersionUID = -2968563301473591764L;
+		private final int status;
+
+		public HttpStatusException(String url, int status) {
+			super("HTTP " + status + " from " + url);
+			this.status = status;
+		}
+		public int getStatus() {
+			return status;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package uk.ac.cam.dr369.learngrammar.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.LineProcessor;
+
+/**
+ * Runs a bash script, streaming: the input is written to its stdin (rather than passed as an argument) while its stdout is read, and
+ * each line of output is handed to a {@link LineProcessor} as soon as it arrives - so the output can be decoded while the script is
+ * still running, and a script with a lot to say never blocks on a full pipe. stderr is drained alongside, the last few lines being
+ * kept for the error message should the script fail. A script still running after the timeout is killed. *nix only.
+ *
+ * @author duncan.roberts
+ */
+public class ScriptRunner {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ScriptRunner.class);
+	private static final int STDERR_LINES_KEPT = 10;
+	private static final long STDERR_WAIT_MILLIS = 1000;
+	/**
+	 * Runs the script (<code>$0</code>) as a process group of its own, and kills the whole group when itself killed. Otherwise killing
+	 * an overrunning script would leave the commands in its pipelines running - and holding its stdout open.
+	 */
+	private static final String LAUNCHER = "set -m; /bin/bash \"$0\" & set +m; trap \"kill -- -$!\" TERM; wait $!";
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "script-runner-" + THREAD_COUNT.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	/** Kills scripts that overrun. */
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(DAEMON_THREADS);
+
+	private ScriptRunner() {}
+
+	/**
+	 * @param output given each line of stdout, without its terminator. If it returns false, the script is killed and the rest of its
+	 * output ignored.
+	 * @return <code>output</code>'s result.
+	 * @throws IOException if the script can't be run, exits with an error, or doesn't finish within the timeout.
+	 */
+	public static <T> T run(String script, final String input, long timeout, TimeUnit unit, LineProcessor<T> output) throws IOException {
+		final Process process = new ProcessBuilder("/bin/bash", "-c", LAUNCHER, script).start();
+		final AtomicBoolean timedOut = new AtomicBoolean();
+		ScheduledFuture<?> watchdog = WATCHDOG.schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedOut.set(true);
+				process.destroy();
+			}
+		}, timeout, unit);
+		final LinkedList<String> stderr = new LinkedList<String>();
+		Thread stderrReader = DAEMON_THREADS.newThread(new Runnable() {
+			@Override
+			public void run() {
+				BufferedReader err = new BufferedReader(new InputStreamReader(process.getErrorStream(), Charsets.UTF_8));
+				try {
+					for (String line; (line = err.readLine()) != null;) {
+						synchronized (stderr) {
+							stderr.add(line);
+							if (stderr.size() > STDERR_LINES_KEPT)
+								stderr.removeFirst();
+						}
+					}
+				} catch (IOException e) {
+					// process gone; nothing more to read
+				}
+			}
+		});
+		Thread stdinWriter = DAEMON_THREADS.newThread(new Runnable() {
+			@Override
+			public void run() {
+				Writer in = new OutputStreamWriter(process.getOutputStream(), Charsets.UTF_8);
+				try {
+					in.write(input);
+					in.write('\n');
+				} catch (IOException e) {
+					LOGGER.debug("Script stopped reading its input.", e);
+				}
+				finally {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// as above
+					}
+				}
+			}
+		});
+		stderrReader.start();
+		stdinWriter.start();
+		try {
+			BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+			try {
+				for (String line; (line = out.readLine()) != null;) {
+					if (!output.processLine(line)) {
+						process.destroy();
+						return output.getResult();
+					}
+				}
+			} catch (IOException e) {
+				process.destroy();
+				if (!timedOut.get())
+					throw e;
+			}
+			finally {
+				out.close();
+			}
+			int exitValue = process.waitFor();
+			stderrReader.join(STDERR_WAIT_MILLIS); // in case a child of the script still holds stderr open
+			if (timedOut.get())
+				throw new IOException("Script " + script + " timed out after " + unit.toMillis(timeout) + "ms");
+			if (exitValue != 0) {
+				synchronized (stderr) {
+					throw new IOException("Script " + script + " exited with " + exitValue + ": " + Joiner.on('\n').join(stderr));
+				}
+			}
+			return output.getResult();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			process.destroy();
+			throw new InterruptedIOException("Interrupted running script " + script);
+		} catch (RuntimeException e) { // from 'output'
+			process.destroy();
+			throw e;
+		}
+		finally {
+			watchdog.cancel(false);
+		}
+	}
+
+	/** Collects the output, each line terminated by '\n'. */
+	public static class StringLineProcessor implements LineProcessor<String> {
+		private final StringBuilder out = new StringBuilder();
+
+		@Override
+		public boolean processLine(String line) {
+			out.append(line);
+			out.append('\n');
+			return true;
+		}
+		@Override
+		public String getResult() {
+			return out.toString();
+		}
+	}
+}
@@ -1,14 +1,10 @@
 package uk.ac.cam.dr369.learngrammar.util;
 
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.text.BreakIterator;
 import java.util.ArrayList;
@@ -22,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -36,6 +33,11 @@ public class Utils {
 	/** For convenience */
 	public static final String NEWLINE = System.getProperty("line.separator");
 	
+	private static final int SCRIPT_TIMEOUT_SECONDS = 300;
+	
+	/** Shared by all webservice calls, so that connections to the server are reused. Concurrency matches the JDK's keep-alive cache. */
+	private static final PooledHttpClient WEBSERVICE_CLIENT = new PooledHttpClient(5, 5000, 60000, 2, 200);
+	
 	private static final List<String> COMMON_TOKENISER_MAP_TOK = Lists.newArrayList();
 	private static final List<String> COMMON_TOKENISER_MAP_DETOK = Lists.newArrayList();
 	private static final List<String> TOKENISER_MAP_TOK = Lists.newArrayList();
@@ -455,60 +457,17 @@ public class Utils {
 		}
 	}
 	
+	/**
+	 * Runs a script with <code>input</code> on its stdin, and returns its output once it's finished. See {@link ScriptRunner} to handle
+	 * the output as it's written.
+	 */
 	public static String runScript(String script, String input) throws IOException {
-		// FIXME massive exploit in code below; should sanitise input before running to avoid arbitrary code exec
-		String[] parseTask = new String[] {"/bin/bash", script, input};
-		Process process = Runtime.getRuntime().exec(parseTask);
-		try {
-			if(process.waitFor() != 0)
-				throw new IllegalStateException("WaitFor != 0");
-		} catch (InterruptedException e) {
-			throw new RuntimeException("Error running parsing script "+script+" for input "+input, e);
-		}
-		if(process.exitValue() != 0)
-			throw new IllegalStateException("ExitCode != 0");
-		
-		String line;
-//		BufferedReader es = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-//		if ((line = es.readLine()) != null) {
-//			throw new IllegalStateException("Error: "+line);
-//		}
-		BufferedReader os = new BufferedReader(new InputStreamReader(process.getInputStream()));
-		
-		StringBuilder out = new StringBuilder();
-		for (line = null; (line = os.readLine()) != null;) {
-			out.append(line);
-			out.append('\n');
-		}
-		return out.toString();
+		return ScriptRunner.run(script, input, SCRIPT_TIMEOUT_SECONDS, TimeUnit.SECONDS, new ScriptRunner.StringLineProcessor());
 	}
 	
 	public static String callWebservice(String urlPrefix, String sentence) throws IOException {
 		String sentenceEnc = URLEncoder.encode(sentence, "UTF-8");
-		
-		URL url = new URL(urlPrefix + sentenceEnc);
-		
-		StringBuffer sb;
-		BufferedReader rd = null;
-		URLConnection conn;
-		try {
-			conn = url.openConnection();
-			rd = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-			sb = new StringBuffer();
-			String line;
-			while ((line = rd.readLine()) != null) {
-				sb.append(line);
-				sb.append('\n');
-			}
-		}
-		catch (Exception e) {
-			throw e;
-		}
-		finally {
-			if (rd != null)
-				rd.close();
-		}
-		return sb.toString();
+		return WEBSERVICE_CLIENT.get(urlPrefix + sentenceEnc);
 	}
 	
 	public static String asciiify(String text) {
@@ -2,9 +2,100 @@ package uk.ac.cam.dr369.learngrammar.commonality.test;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Test;
 
+import uk.ac.cam.dr369.learngrammar.commonality.Commonality;
+import uk.ac.cam.dr369.learngrammar.commonality.ScoredDependencyStructure;
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+
+import com.google.common.collect.ImmutableList;
+
 public class CommonalityTest {
+	// Several verbs a sentence, so that verb frames can be scored more than once in one.
+	private static final List<DependencyStructure> EXAMPLES = sorted(
+			sentence("John|John|NNP eats|eat|VBZ cake|cake|NN and|and|CC drinks|drink|VBZ tea|tea|NN .|.|.",
+					"ncsubj 1 0", "dobj 1 2", "conj 3 1", "conj 3 4", "dobj 4 5"),
+			sentence("Mary|Mary|NNP eats|eat|VBZ bread|bread|NN and|and|CC reads|read|VBZ books|book|NNS .|.|.",
+					"ncsubj 1 0", "dobj 1 2", "conj 3 1", "conj 3 4", "dobj 4 5"));
+	private static final List<DependencyStructure> COUNTER_EXAMPLES = sorted(
+			sentence("John|John|NNP sleeps|sleep|VBZ .|.|.", "ncsubj 1 0"));
+	private static final List<DependencyStructure> OTHER_EXAMPLES = sorted(
+			sentence("Tom|Tom|NNP reads|read|VBZ books|book|NNS .|.|.", "ncsubj 1 0", "dobj 1 2"),
+			sentence("Ann|Ann|NNP writes|write|VBZ letters|letter|NNS .|.|.", "ncsubj 1 0", "dobj 1 2"));
+	private static final List<DependencyStructure> CORPUS = ImmutableList.of(
+			sentence("Tom|Tom|NNP eats|eat|VBZ soup|soup|NN .|.|.", "ncsubj 1 0", "dobj 1 2"),
+			sentence("Tom|Tom|NNP sleeps|sleep|VBZ and|and|CC dreams|dream|VBZ .|.|.",
+					"ncsubj 1 0", "conj 2 1", "conj 2 3"),
+			sentence("Ann|Ann|NNP cooks|cook|VBZ rice|rice|NN and|and|CC eats|eat|VBZ fish|fish|NN .|.|.",
+					"ncsubj 1 0", "dobj 1 2", "conj 3 1", "conj 3 4", "dobj 4 5"),
+			sentence("Ann|Ann|NNP drinks|drink|VBZ milk|milk|NN ,|,|, reads|read|VBZ news|news|NN and|and|CC writes|write|VBZ letters|letter|NNS .|.|.",
+					"ncsubj 1 0", "dobj 1 2", "dobj 4 5", "conj 6 1", "conj 6 4", "conj 6 7", "dobj 7 8"),
+			sentence("The|the|DT dog|dog|NN barks|bark|VBZ .|.|.", "det 1 0", "ncsubj 2 1"),
+			sentence("Bob|Bob|NNP reads|read|VBZ books|book|NNS .|.|.", "ncsubj 1 0", "dobj 1 2"),
+			sentence("Bob|Bob|NNP eats|eat|VBZ cake|cake|NN and|and|CC drinks|drink|VBZ tea|tea|NN .|.|.",
+					"ncsubj 1 0", "dobj 1 2", "conj 3 1", "conj 3 4", "dobj 4 5"),
+			sentence("Cats|cat|NNS sleep|sleep|VBP .|.|.", "ncsubj 1 0"),
+			sentence("Sue|Sue|NNP sings|sing|VBZ songs|song|NNS and|and|CC plays|play|VBZ games|game|NNS .|.|.",
+					"ncsubj 1 0", "dobj 1 2", "conj 3 1", "conj 3 4", "dobj 4 5"),
+			sentence("Sue|Sue|NNP eats|eat|VBZ .|.|.", "ncsubj 1 0"));
+
+	/** The best <code>k</code> scores found with bounds match those of an exhaustive search. */
+	@Test
+	public void testFindTopSimilar() {
+		Commonality commonality = new Commonality(EXAMPLES, COUNTER_EXAMPLES);
+		List<ScoredDependencyStructure> similar = new ArrayList<ScoredDependencyStructure>();
+		commonality.findCorpusMatches(CORPUS, similar, new ArrayList<ScoredDependencyStructure>()); // sorted, highest first
+		List<Double> exhaustive = scores(similar);
+		assertFalse(exhaustive.isEmpty());
+		for (int k = 0; k <= exhaustive.size(); k++) {
+			assertEquals("Top " + k, exhaustive.subList(0, k), scores(commonality.findTopSimilar(CORPUS, k)));
+		}
+		assertEquals(exhaustive, scores(commonality.findTopSimilar(CORPUS, CORPUS.size() + 1)));
+
+		List<String> top = new ArrayList<String>();
+		commonality.findTopCorpusMatchesAsStrings(CORPUS, 2, top);
+		assertEquals(2 + EXAMPLES.size(), top.size());
+		assertTrue(top.get(0), top.get(0).startsWith(similar.get(0).getSentence() + "\t\t\t*" + similar.get(0).score() + "*"));
+		assertEquals(EXAMPLES.get(0).getSentence(), top.get(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFindTopSimilarNegativeLimit() {
+		new Commonality(EXAMPLES, COUNTER_EXAMPLES).findTopSimilar(CORPUS, -1);
+	}
+
+	/**
+	 * Each commonality's matches from the shared pass over the corpus are those of its own pass, score for score - verb frames
+	 * included, which each sheet keys on its own commonality's common verb frames.
+	 */
+	@Test
+	public void testFindCorpusMatchesTogether() {
+		List<Commonality> commonalities = ImmutableList.of(
+				new Commonality(EXAMPLES, COUNTER_EXAMPLES),
+				new Commonality(OTHER_EXAMPLES, COUNTER_EXAMPLES),
+				new Commonality(EXAMPLES, ImmutableList.<DependencyStructure>of()));
+		List<List<ScoredDependencyStructure>> similarLists = new ArrayList<List<ScoredDependencyStructure>>();
+		List<List<ScoredDependencyStructure>> incorrectLists = new ArrayList<List<ScoredDependencyStructure>>();
+		Commonality.findCorpusMatches(commonalities, CORPUS, similarLists, incorrectLists);
+		assertEquals(commonalities.size(), similarLists.size());
+		assertEquals(commonalities.size(), incorrectLists.size());
+		for (int i = 0; i < commonalities.size(); i++) {
+			List<ScoredDependencyStructure> similar = new ArrayList<ScoredDependencyStructure>();
+			List<ScoredDependencyStructure> incorrect = new ArrayList<ScoredDependencyStructure>();
+			commonalities.get(i).findCorpusMatches(CORPUS, similar, incorrect);
+			assertFalse(similar.isEmpty());
+			assertEquals("Similar, commonality " + i, describe(similar), describe(similarLists.get(i)));
+			assertEquals("Incorrect, commonality " + i, describe(incorrect), describe(incorrectLists.get(i)));
+		}
+	}
 
 	@Test
 	public void testHashCode() {
@@ -56,4 +147,45 @@ public class CommonalityTest {
 		fail("Not yet implemented");
 	}
 
+	private static List<Double> scores(List<ScoredDependencyStructure> sentences) {
+		List<Double> scores = new ArrayList<Double>();
+		for (ScoredDependencyStructure sentence : sentences) {
+			scores.add(sentence.score());
+		}
+		return scores;
+	}
+
+	/** Each sentence with its score and every feature scored, expected and actual values and all. */
+	private static List<String> describe(List<ScoredDependencyStructure> sentences) {
+		List<String> described = new ArrayList<String>();
+		for (ScoredDependencyStructure sentence : sentences) {
+			described.add(sentence.getSentence() + ": " + sentence.score() + " " + sentence.scores());
+		}
+		return described;
+	}
+
+	/**
+	 * @param tokens word|lemma|tag, space separated. Lemmas are given so that WordNet isn't needed.
+	 * @param grs type, head and dependent, the latter two as token positions.
+	 */
+	static DependencyStructure sentence(String tokens, String... grs) {
+		List<Token> toks = new ArrayList<Token>();
+		for (String token : tokens.split(" ")) {
+			String[] fields = token.split("\\|");
+			toks.add(new Token(fields[1], null, toks.size(), CandcPtbPos.valueOfByLabel(fields[2]), null, fields[0]));
+		}
+		List<GrammaticalRelation> grList = new ArrayList<GrammaticalRelation>();
+		for (String gr : grs) {
+			String[] fields = gr.split(" ");
+			grList.add(new GrammaticalRelation(GrType.valueOfByLabel(fields[0]), null, null,
+					toks.get(Integer.parseInt(fields[1])), toks.get(Integer.parseInt(fields[2]))));
+		}
+		return new DependencyStructure(grList, toks);
+	}
+
+	private static List<DependencyStructure> sorted(DependencyStructure... sentences) {
+		List<DependencyStructure> list = new ArrayList<DependencyStructure>(ImmutableList.copyOf(sentences));
+		Collections.sort(list);
+		return list;
+	}
 }
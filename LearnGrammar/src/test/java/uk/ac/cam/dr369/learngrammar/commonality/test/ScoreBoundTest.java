@@ -0,0 +1,87 @@
+package uk.ac.cam.dr369.learngrammar.commonality.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.commonality.Commonality.FeatureType;
+import uk.ac.cam.dr369.learngrammar.commonality.FeatureProfile;
+import uk.ac.cam.dr369.learngrammar.commonality.ScoreBound;
+import uk.ac.cam.dr369.learngrammar.commonality.Twig;
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.semantics.VerbFrame;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ScoreBoundTest {
+	private static final DependencyStructure EMPTY =
+		new DependencyStructure(ImmutableList.<GrammaticalRelation>of(), ImmutableList.<Token>of());
+	private static final VerbFrame FRAME = frame("test frame");
+	private static final VerbFrame OTHER_FRAME = frame("other test frame");
+
+	@Test
+	public void testBoundNoFeatures() {
+		ScoreBound bound = new ScoreBound(
+				new HashMap<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>>(),
+				new HashMap<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>>(), 40);
+		assertEquals(0, bound.bound(EMPTY));
+	}
+
+	@Test
+	public void testBoundVerbFrames() {
+		Map<VerbFrame, List<Token>> frames = ImmutableMap.<VerbFrame, List<Token>>of(FRAME, ImmutableList.<Token>of());
+		Map<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>> verbFrames = new HashMap<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>>();
+		verbFrames.put(FeatureType.STRONG, ImmutableMap.of(false, frames));
+		verbFrames.put(FeatureType.WEAK, ImmutableMap.of(true, frames));
+		ScoreBound bound = new ScoreBound(verbFrames,
+				new HashMap<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>>(), 40);
+		// Absence of a frame can be scored by any sentence; presence needs a verb.
+		assertEquals(40 * FeatureType.STRONG.multiplier(), bound.bound(EMPTY));
+	}
+
+	@Test
+	public void testBoundVerbFramesPerVerb() {
+		// Each verb adding a common frame not yet scored scores again: at most once per verb, and once per frame.
+		Map<VerbFrame, List<Token>> frames =
+			ImmutableMap.<VerbFrame, List<Token>>of(FRAME, ImmutableList.<Token>of(), OTHER_FRAME, ImmutableList.<Token>of());
+		Map<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>> verbFrames = new HashMap<FeatureType,Map<Boolean,Map<VerbFrame, List<Token>>>>();
+		verbFrames.put(FeatureType.WEAK, ImmutableMap.of(true, frames));
+		ScoreBound bound = new ScoreBound(verbFrames,
+				new HashMap<FeatureType,Map<Boolean,Map<FeatureProfile,Map<Integer,Set<Twig>>>>>(), 40);
+		int points = 40 * FeatureType.WEAK.multiplier();
+		assertEquals(0, bound.bound(EMPTY));
+		assertEquals(points, bound.bound(verbs(1)));
+		assertEquals(2 * points, bound.bound(verbs(2)));
+		assertEquals(2 * points, bound.bound(verbs(3)));
+	}
+
+	private static DependencyStructure verbs(int n) {
+		List<Token> tokens = new ArrayList<Token>();
+		for (int i = 0; i < n; i++) {
+			tokens.add(new Token("eat", null, i, CandcPtbPos.VERB_3SG_PRESENT, null, "eats"));
+		}
+		return new DependencyStructure(new ArrayList<GrammaticalRelation>(), tokens);
+	}
+
+	private static VerbFrame frame(final String description) {
+		return new VerbFrame() {
+			private static final long serialVersionUID = 1L;
+			public boolean accept(Token verb) {
+				return true;
+			}
+			public String getDescription() {
+				return description;
+			}
+		};
+	}
+}
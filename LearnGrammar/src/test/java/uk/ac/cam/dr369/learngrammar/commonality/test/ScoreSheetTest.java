@@ -0,0 +1,88 @@
+package uk.ac.cam.dr369.learngrammar.commonality.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.commonality.Commonality.FeatureType;
+import uk.ac.cam.dr369.learngrammar.commonality.Score;
+import uk.ac.cam.dr369.learngrammar.commonality.ScoreSheet;
+
+public class ScoreSheetTest {
+
+	@Test
+	public void testAdd() {
+		ScoreSheet sheet = new ScoreSheet(3);
+		int strong = sheet.register(null, 1.5d, "strong", null, null, FeatureType.STRONG);
+		int weak = sheet.register(null, 3d, "weak", null, null, FeatureType.WEAK);
+		sheet.add(0, strong);
+		sheet.add(0, weak);
+		sheet.add(2, weak, -3d);
+		
+		assertTrue(sheet.scored(0));
+		assertFalse(sheet.scored(1));
+		assertEquals(7d + 6d, sheet.total(0), 0d);
+		assertEquals(0d, sheet.total(1), 0d);
+		assertEquals(-6d, sheet.total(2), 0d);
+	}
+
+	@Test
+	public void testFeatureId() {
+		ScoreSheet sheet = new ScoreSheet(1);
+		Object key = new Object();
+		assertNull(sheet.featureId(key));
+		int id = sheet.register(key, 1d, "feature", null, null, FeatureType.WEAK);
+		assertEquals(Integer.valueOf(id), sheet.featureId(key));
+		assertEquals(Integer.valueOf(id), sheet.derive().featureId(key));
+	}
+
+	@Test
+	public void testFeatures() {
+		ScoreSheet sheet = new ScoreSheet(1);
+		int a = sheet.register(null, 1d, "a", null, null, FeatureType.WEAK);
+		int b = sheet.register(null, 1d, "b", null, null, FeatureType.WEAK);
+		for (int i = 0; i < 300; i++) // past initial capacity
+			sheet.add(0, i % 2 == 0 ? a : b);
+		assertArrayEquals(new int[] {b, a}, sheet.features(0));
+		assertEquals(300, sheet.explain(0).size());
+	}
+
+	@Test
+	public void testDerive() {
+		ScoreSheet sheet = new ScoreSheet(2);
+		int f = sheet.register(null, 1d, "f", null, null, FeatureType.WEAK);
+		sheet.add(1, f);
+		ScoreSheet derived = sheet.derive();
+		assertEquals(2, derived.sentences());
+		assertFalse(derived.scored(1));
+		assertEquals("f", derived.feature(f).description());
+	}
+
+	@Test
+	public void testExplain() {
+		ScoreSheet sheet = new ScoreSheet(2);
+		int structure = sheet.register(null, 1d, "structure", "common", null, FeatureType.WEAK);
+		int absence = sheet.register(null, 1d, "absence", null, "missing", FeatureType.WEAK);
+		sheet.add(0, structure, "matched in 0");
+		sheet.add(1, structure, "matched in 1");
+		sheet.add(1, absence);
+
+		List<Score> scores = sheet.explain(0);
+		assertEquals(1, scores.size());
+		assertEquals("common", scores.get(0).expected());
+		assertEquals("matched in 0", scores.get(0).actual());
+		scores = sheet.explain(1);
+		assertEquals("missing", scores.get(0).actual());
+		assertEquals("matched in 1", scores.get(1).actual());
+		assertEquals("structure (expected: common; actual: matched in 1; strength: weak; points: 2)", scores.get(1).toString());
+		assertEquals("structure (expected: common; strength: weak; points: 2)", sheet.feature(structure).toString());
+		assertEquals("absence (missing; strength: weak; points: 2)", scores.get(0).toString());
+	}
+
+}
@@ -0,0 +1,133 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.AsyncSyntacticParser;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.parsing.SyntacticParser;
+
+import com.google.common.collect.ImmutableList;
+
+public class AsyncSyntacticParserTest {
+	private static final DependencyStructure EMPTY =
+		new DependencyStructure(ImmutableList.<GrammaticalRelation>of(), ImmutableList.<Token>of());
+
+	/** Blocks every parse until released, counting how many are running at once. */
+	private static class GatedParser implements SyntacticParser {
+		final CountDownLatch gate = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		public DependencyStructure toDependencyStructure(String sentence) throws IOException {
+			int now = running.incrementAndGet();
+			while (maxRunning.get() < now)
+				maxRunning.compareAndSet(maxRunning.get(), now);
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			finally {
+				running.decrementAndGet();
+			}
+			if (sentence.equals("bad"))
+				throw new IOException("unparseable");
+			return EMPTY;
+		}
+		public List<DependencyStructure> toDependencyStructures(String sentences) throws IOException {
+			return ImmutableList.of(toDependencyStructure(sentences));
+		}
+		public boolean useCorpus() {
+			return false;
+		}
+		public Collection<DependencyStructure> getCorpus() {
+			return ImmutableList.of();
+		}
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		GatedParser parser = new GatedParser();
+		AsyncSyntacticParser async = new AsyncSyntacticParser(parser, 3, 100);
+		try {
+			List<Future<DependencyStructure>> results = new ArrayList<Future<DependencyStructure>>();
+			for (int i = 0; i < 20; i++)
+				results.add(async.toDependencyStructureAsync("sentence " + i));
+			Thread.sleep(100);
+			assertEquals(3, parser.running.get());
+			parser.gate.countDown();
+			for (Future<DependencyStructure> result : results)
+				assertSame(EMPTY, result.get(5, TimeUnit.SECONDS));
+			assertEquals(3, parser.maxRunning.get());
+		}
+		finally {
+			async.close();
+		}
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		final GatedParser parser = new GatedParser();
+		final AsyncSyntacticParser async = new AsyncSyntacticParser(parser, 1, 1);
+		try {
+			async.toDependencyStructureAsync("running");
+			async.toDependencyStructureAsync("queued");
+			final CountDownLatch submitted = new CountDownLatch(1);
+			Thread producer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						async.toDependencyStructureAsync("blocked");
+						submitted.countDown();
+					} catch (IOException e) {
+						// left uncounted
+					}
+				}
+			};
+			producer.start();
+			assertFalse(submitted.await(200, TimeUnit.MILLISECONDS)); // queue full
+			parser.gate.countDown();
+			assertTrue(submitted.await(5, TimeUnit.SECONDS));
+		}
+		finally {
+			async.close();
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		GatedParser parser = new GatedParser();
+		parser.gate.countDown();
+		AsyncSyntacticParser async = new AsyncSyntacticParser(parser, 1, 0);
+		try {
+			try {
+				async.toDependencyStructureAsync("bad").get();
+				fail("Expected parse failure");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+			assertEquals(ImmutableList.of(EMPTY), async.toDependencyStructuresAsync("good").get()); // permit was given back
+		}
+		finally {
+			async.close();
+		}
+	}
+}
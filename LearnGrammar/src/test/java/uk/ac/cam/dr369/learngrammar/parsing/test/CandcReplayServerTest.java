@@ -0,0 +1,126 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.CandcLoadGenerator;
+import uk.ac.cam.dr369.learngrammar.parsing.CandcReplayServer;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.parsing.SyntacticParser;
+import uk.ac.cam.dr369.learngrammar.util.PooledHttpClient;
+import uk.ac.cam.dr369.learngrammar.util.PooledHttpClient.HttpStatusException;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+public class CandcReplayServerTest {
+	private static final String JOHN =
+		"(ncsubj eats_1 John_0 _)\n" +
+		"(dobj eats_1 cake_2)\n" +
+		"<c> John|John|NNP|I-NP|I-PER|N eats|eat|VBZ|I-VP|O|(S[dcl]\\NP)/NP cake|cake|NN|I-NP|O|N .|.|.|O|O|.\n";
+	private static final String MARY =
+		"(ncsubj does_2 Mary_0 _)\n" +
+		"<c> Mary|Mary|NNP|I-NP|I-PER|N does|do|VBZ|I-VP|O|S[dcl]\\NP n't|not|RB|I-ADVP|O|(S\\NP)\\(S\\NP) .|.|.|O|O|.\n";
+
+	private File grFile;
+	private CandcReplayServer server;
+	private final PooledHttpClient client = new PooledHttpClient(4, 1000, 5000, 0, 0);
+
+	@Before
+	public void writeCorpus() throws IOException {
+		grFile = File.createTempFile("candcout", ".gr");
+		Files.write("# C&C output\n\n" + JOHN + "\n" + MARY + "\n", grFile, Charsets.UTF_8);
+	}
+
+	@After
+	public void cleanUp() {
+		if (server != null)
+			server.stop();
+		grFile.delete();
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		server = new CandcReplayServer(grFile, 0, 0, 0, 0);
+		server.start(0);
+		assertEquals(ImmutableList.of("John eats cake .", "Mary does n't ."), server.getSentences());
+		assertEquals(JOHN + "\n", get("John eats cake ."));
+		assertEquals(MARY + "\n", get("Mary doesn't.")); // tokenised differently
+		assertEquals("", get("Nobody knows this sentence ."));
+		assertEquals(MARY + "\n" + JOHN + "\n", get("Mary does n't .\nJohn eats cake .")); // a batch
+		assertEquals(4, server.getRequestCount());
+	}
+
+	@Test
+	public void testErrorInjection() throws Exception {
+		server = new CandcReplayServer(grFile, 0, 0, 1.0, 0);
+		server.start(0);
+		try {
+			get("John eats cake .");
+			fail("Expected an injected error");
+		} catch (HttpStatusException e) {
+			assertEquals(500, e.getStatus());
+		}
+		assertEquals(1, server.getErrorCount());
+	}
+
+	@Test
+	public void testLatency() throws Exception {
+		server = new CandcReplayServer(grFile, 100, 50, 0, 0);
+		server.start(0);
+		long start = System.currentTimeMillis();
+		get("John eats cake .");
+		assertTrue(System.currentTimeMillis() - start >= 100);
+	}
+
+	@Test
+	public void testLoadGenerator() throws Exception {
+		server = new CandcReplayServer(grFile, 20, 0, 0.1, 42);
+		server.start(0);
+		SyntacticParser parser = new SyntacticParser() {
+			@Override
+			public DependencyStructure toDependencyStructure(String sentence) throws IOException {
+				return get(sentence).isEmpty() ? null :
+					new DependencyStructure(ImmutableList.<GrammaticalRelation>of(), ImmutableList.<Token>of());
+			}
+			@Override
+			public List<DependencyStructure> toDependencyStructures(String sentences) throws IOException {
+				throw new UnsupportedOperationException();
+			}
+			@Override
+			public boolean useCorpus() {
+				return false;
+			}
+			@Override
+			public Collection<DependencyStructure> getCorpus() {
+				return ImmutableList.of();
+			}
+		};
+		CandcLoadGenerator.Result result = CandcLoadGenerator.run(parser,
+				ImmutableList.of("John eats cake .", "Mary doesn't .", "Unknown ."), 60, 4);
+		assertEquals(60, result.getRequests());
+		assertEquals(server.getErrorCount(), result.getFailures());
+		assertEquals(20, result.getUnparsed());
+		assertTrue(result.getLatencyMillis(50) >= 20);
+		assertTrue(result.getLatencyMillis(50) <= result.getLatencyMillis(99));
+		assertTrue(result.getThroughput() > 0);
+	}
+
+	private String get(String sentences) throws IOException {
+		return client.get(server.getUrl() + URLEncoder.encode(sentences, "UTF-8"));
+	}
+}
@@ -0,0 +1,161 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.parsing.CandcWorkerPool;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+/** Runs the pool against stand-in bash scripts rather than C&amp;C itself. */
+public class CandcWorkerPoolTest {
+	// Answers each line as C&C would, with a GR line, some noise and a tokens line.
+	private static final String ECHO_WORKER =
+		"while read line; do echo \"(ncsubj $line)\"; echo 'noise'; echo \"<c> $line\"; done\n";
+	// As C&C does when it can't parse a sentence: no tokens line, and perhaps no GR lines either.
+	private static final String FAILING_WORKER =
+		"while read line; do case \"$line\" in\n" +
+		"  *unparseable*) ;;\n" +
+		"  *partial*) echo \"(ncsubj $line)\";;\n" +
+		"  *) echo \"(ncsubj $line)\"; echo \"<c> $line\";;\n" +
+		"esac; done\n";
+
+	@Test
+	public void testParse() throws Exception {
+		CandcWorkerPool pool = new CandcWorkerPool(script(ECHO_WORKER), 1, 10, TimeUnit.SECONDS);
+		try {
+			assertEquals("(ncsubj one)\n<c> one\n", pool.parse("one"));
+			assertEquals("(ncsubj two three)\n<c> two three\n", pool.parse("two\nthree"));
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testParseAll() throws Exception {
+		CandcWorkerPool pool = new CandcWorkerPool(script(ECHO_WORKER), 2, 10, TimeUnit.SECONDS);
+		try {
+			assertEquals(ImmutableList.of("(ncsubj one)\n<c> one\n", "(ncsubj two)\n<c> two\n", "(ncsubj three)\n<c> three\n"),
+					pool.parseAll(ImmutableList.of("one", "two", "three")));
+			assertTrue(pool.parseAll(ImmutableList.<String>of()).isEmpty());
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	/** A batch whose output is far bigger than the pipe buffer: the reader must keep reading while the batch is still being written. */
+	@Test(timeout = 120000)
+	public void testBatchBiggerThanPipe() throws Exception {
+		CandcWorkerPool pool = new CandcWorkerPool(script(ECHO_WORKER), 1, 60, TimeUnit.SECONDS);
+		try {
+			List<String> sentences = new ArrayList<String>();
+			for (int i = 0; i < 5000; i++) {
+				sentences.add("a rather long sentence, so that the output soon fills the pipe, number " + i);
+			}
+			List<String> parses = pool.parseAll(sentences);
+			assertEquals(sentences.size(), parses.size());
+			for (int i = 0; i < sentences.size(); i++) {
+				assertEquals("(ncsubj " + sentences.get(i) + ")\n<c> " + sentences.get(i) + "\n", parses.get(i));
+			}
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	/** A sentence without a parse doesn't shift the others' parses onto the wrong sentences. */
+	@Test
+	public void testUnparsedSentence() throws Exception {
+		CandcWorkerPool pool = new CandcWorkerPool(script(FAILING_WORKER), 1, 10, TimeUnit.SECONDS);
+		try {
+			assertEquals(ImmutableList.of("(ncsubj one)\n<c> one\n", "", "(ncsubj three)\n<c> three\n", "", "(ncsubj five)\n<c> five\n"),
+					pool.parseAll(ImmutableList.of("one", "unparseable two", "three", "partial four", "five")));
+			assertEquals("", pool.parse("unparseable"));
+			assertEquals("(ncsubj six)\n<c> six\n", pool.parse("six"));
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testPipelining() throws Exception {
+		final CandcWorkerPool pool = new CandcWorkerPool(script(ECHO_WORKER), 2, 10, TimeUnit.SECONDS);
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> outputs = new ArrayList<Future<String>>();
+			for (int i = 0; i < 200; i++) {
+				final String sentence = "sentence" + i;
+				outputs.add(threads.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return pool.parse(sentence);
+					}
+				}));
+			}
+			for (int i = 0; i < outputs.size(); i++) {
+				assertEquals("(ncsubj sentence" + i + ")\n<c> sentence" + i + "\n", outputs.get(i).get());
+			}
+		}
+		finally {
+			threads.shutdown();
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testRestartAfterExit() throws Exception {
+		// Answers one sentence - and the sentinel after it - then exits
+		CandcWorkerPool pool = new CandcWorkerPool(script("for i in 1 2; do read line; echo \"<c> $line\"; done\n"), 1, 10, TimeUnit.SECONDS);
+		try {
+			assertEquals("<c> one\n", pool.parse("one"));
+			Thread.sleep(200); // let the worker exit
+			try {
+				assertEquals("<c> two\n", pool.parse("two"));
+			} catch (IOException e) { // raced the exit: next one gets a fresh worker
+				assertEquals("<c> three\n", pool.parse("three"));
+			}
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		CandcWorkerPool pool = new CandcWorkerPool(script("while read line; do :; done\n"), 1, 200, TimeUnit.MILLISECONDS);
+		try {
+			pool.parse("never answered");
+			fail("Expected timeout");
+		} catch (IOException e) {
+			// expected
+		}
+		finally {
+			pool.close();
+		}
+	}
+
+	private static String script(String body) throws IOException {
+		File script = File.createTempFile("candc_worker", ".sh");
+		script.deleteOnExit();
+		Files.write(body, script, Charsets.UTF_8);
+		return script.getPath();
+	}
+}
@@ -0,0 +1,182 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.parsing.CorpusIngester;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+public class CorpusIngesterTest {
+	private static final String DOCUMENT =
+		"The cat sat on the mat. The dog ate\n" +
+		"the bone.\n" +
+		"\n" +
+		"This one fails. A fragment here. Nobody can parse this unparseable one.\n" +
+		"\n" +
+		"\n" +
+		"The last sentence is here.\n";
+
+	private static final Predicate<String> NOT_FRAGMENTS = new Predicate<String>() {
+		@Override
+		public boolean apply(String output) {
+			return !output.contains("fragment");
+		}
+	};
+
+	private File directory;
+	private File corpusFile;
+	private File document;
+	private final AtomicInteger parses = new AtomicInteger();
+
+	/** Stands in for C&amp;C: a GR line and a tokens line - and a line that isn't corpus output - taking longer for shorter sentences. */
+	private final CorpusIngester.Parser parser = new CorpusIngester.Parser() {
+		@Override
+		public String parse(String sentence) throws IOException {
+			parses.incrementAndGet();
+			try {
+				Thread.sleep(Math.max(0, 60 - sentence.length()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (sentence.contains("fails"))
+				throw new IOException("Parse failed");
+			if (sentence.contains("unparseable"))
+				return "";
+			return "# a comment\n(det word_1 word_0)\n<c> " + sentence + "\n";
+		}
+	};
+
+	@Before
+	public void createFiles() throws IOException {
+		directory = Files.createTempDir();
+		corpusFile = new File(directory, "candcout.gr");
+		document = new File(directory, "document.txt");
+		Files.write(DOCUMENT, document, Charsets.UTF_8);
+	}
+
+	@After
+	public void deleteFiles() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testIngest() throws Exception {
+		CorpusIngester.Result result = ingester(4, 2, 2).ingest(ImmutableList.of(document));
+		assertEquals(3, result.getAdded());
+		assertEquals(1, result.getFailed());
+		assertEquals(1, result.getRejected());
+		assertEquals(1, result.getUnparsed());
+		assertEquals(expected(), Files.toString(corpusFile, Charsets.UTF_8)); // in document order, however the parses finished
+	}
+
+	@Test
+	public void testAppendsToCorpus() throws Exception {
+		Files.write("(det cat_1 The_0)\n<c> The cat", corpusFile, Charsets.UTF_8);
+		ingester(2, 0, 100).ingest(ImmutableList.of(document));
+		assertEquals("(det cat_1 The_0)\n<c> The cat\n\n" + expected(), Files.toString(corpusFile, Charsets.UTF_8));
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		ingester(4, 2, 2).ingest(ImmutableList.of(document));
+		String complete = Files.toString(corpusFile, Charsets.UTF_8);
+
+		// As if interrupted after the second checkpoint, with some of the next sentence written
+		Properties checkpoint = readCheckpoint();
+		checkpoint.remove("complete");
+		checkpoint.setProperty("sentences", "4"); // the fourth is the fragment
+		String firstTwo = sentence("The cat sat on the mat.") + sentence("The dog ate the bone.");
+		checkpoint.setProperty("corpusLength", String.valueOf(firstTwo.length()));
+		writeCheckpoint(checkpoint);
+		Files.write(firstTwo + "(det word_1 wo", corpusFile, Charsets.UTF_8);
+
+		parses.set(0);
+		CorpusIngester.Result result = ingester(4, 2, 2).ingest(ImmutableList.of(document));
+		assertEquals(4, result.getResumed());
+		assertEquals(1, result.getAdded());
+		assertEquals(2, parses.get());
+		assertEquals(complete, Files.toString(corpusFile, Charsets.UTF_8));
+
+		// Finished: nothing more to do
+		parses.set(0);
+		assertEquals(0, ingester(4, 2, 2).ingest(ImmutableList.of(document)).getAdded());
+		assertEquals(0, parses.get());
+		assertEquals(complete, Files.toString(corpusFile, Charsets.UTF_8));
+	}
+
+	@Test
+	public void testUnfinishedIngestOfOtherDocuments() throws Exception {
+		ingester(1, 0, 100).ingest(ImmutableList.of(document));
+		Properties checkpoint = readCheckpoint();
+		checkpoint.remove("complete");
+		writeCheckpoint(checkpoint);
+
+		File other = new File(directory, "other.txt");
+		Files.write("Another document is here.", other, Charsets.UTF_8);
+		try {
+			ingester(1, 0, 100).ingest(ImmutableList.of(other));
+			fail("Expected the unfinished ingest to be reported");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains(document.getAbsolutePath()));
+		}
+	}
+
+	private CorpusIngester ingester(int concurrency, int queueSize, int checkpointInterval) {
+		return new CorpusIngester(parser, NOT_FRAGMENTS, corpusFile, concurrency, queueSize, checkpointInterval);
+	}
+
+	private Properties readCheckpoint() throws IOException {
+		Properties checkpoint = new Properties();
+		Reader in = Files.newReader(new File(corpusFile.getPath() + ".ingest"), Charsets.UTF_8);
+		try {
+			checkpoint.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return checkpoint;
+	}
+
+	private void writeCheckpoint(Properties checkpoint) throws IOException {
+		Writer out = Files.newWriter(new File(corpusFile.getPath() + ".ingest"), Charsets.UTF_8);
+		try {
+			checkpoint.store(out, null);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static String expected() {
+		List<String> kept = ImmutableList.of("The cat sat on the mat.", "The dog ate the bone.", "The last sentence is here.");
+		StringBuilder expected = new StringBuilder();
+		for (String sentence : kept) {
+			expected.append(sentence(sentence));
+		}
+		return expected.toString();
+	}
+
+	private static String sentence(String sentence) {
+		return "(det word_1 word_0)\n<c> " + sentence + "\n\n";
+	}
+}
@@ -0,0 +1,124 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.CorpusSnapshot;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.semantics.SemanticNounClass;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class CorpusSnapshotTest {
+	private File directory;
+	private File corpusFile;
+
+	@BeforeClass
+	public static void noWordnet() {
+		SemanticNounClass.preloadCommonNounClasses(ImmutableMap.<String, SemanticNounClass>of());
+	}
+
+	/** Snapshots read back also preload their (empty) tables, so later tests would see no common nouns at all. */
+	@AfterClass
+	public static void forgetCommonNounClasses() {
+		SemanticNounClass.resetCommonNounClasses();
+	}
+
+	@Before
+	public void createCorpus() throws IOException {
+		directory = Files.createTempDir();
+		corpusFile = new File(directory, "candcout.gr");
+		Files.write("(ncsubj eats_1 John_0 _)\n<c> John|John|NNP|N eats|eat|VBZ|S[dcl]\\NP\n", corpusFile, Charsets.UTF_8);
+	}
+
+	@After
+	public void deleteCorpus() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testReadBack() throws Exception {
+		List<DependencyStructure> corpus = ImmutableList.of(sentence("John", "eat", "eats"), sentence("Mary", "sleep", "sleeps"));
+		CorpusSnapshot.write(corpusFile, corpus, null);
+		assertTrue(CorpusSnapshot.isUpToDate(corpusFile));
+		assertEquals(corpus, new ArrayList<DependencyStructure>(CorpusSnapshot.read(corpusFile, null)));
+		assertNull("Other sentence limit", CorpusSnapshot.read(corpusFile, 1));
+
+		assertTrue(CorpusSnapshot.extend(corpusFile, ImmutableList.of(sentence("Tom", "read", "reads"), corpus.get(0))));
+		assertEquals(3, CorpusSnapshot.read(corpusFile, null).size());
+	}
+
+	@Test
+	public void testCommonNounClassesRestored() throws Exception {
+		CorpusSnapshot.write(corpusFile, ImmutableList.of(sentence("John", "eat", "eats")), null);
+		SemanticNounClass.preloadCommonNounClasses(ImmutableMap.of("cow", SemanticNounClass.SOMEBODY));
+		CorpusSnapshot.read(corpusFile, null);
+		assertTrue("As the snapshot was taken", SemanticNounClass.getCommonNounClasses().isEmpty());
+		SemanticNounClass.preloadCommonNounClasses(ImmutableMap.<String, SemanticNounClass>of());
+	}
+
+	/** A snapshot written in another format - say, with fewer verb frames - is ignored, however new it is. */
+	@Test
+	public void testOtherFormatIgnored() throws Exception {
+		CorpusSnapshot.write(corpusFile, ImmutableList.of(sentence("John", "eat", "eats")), null);
+		restamp(CorpusSnapshot.fileFor(corpusFile), "format 1, 3 verb frames");
+		assertTrue(CorpusSnapshot.isUpToDate(corpusFile));
+		assertNull(CorpusSnapshot.read(corpusFile, null));
+		assertFalse(CorpusSnapshot.extend(corpusFile, ImmutableList.of(sentence("Tom", "read", "reads"))));
+	}
+
+	private static void restamp(File snapshotFile, String stamp) throws Exception {
+		ObjectInputStream ois = new ObjectInputStream(new FileInputStream(snapshotFile));
+		Object snapshot;
+		try {
+			ois.readObject();
+			snapshot = ois.readObject();
+		}
+		finally {
+			ois.close();
+		}
+		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(snapshotFile));
+		try {
+			oos.writeObject(stamp);
+			oos.writeObject(snapshot);
+		}
+		finally {
+			oos.close();
+		}
+	}
+
+	private static DependencyStructure sentence(String subject, String lemma, String verb) {
+		Token subj = new Token(subject, null, 0, CandcPtbPos.NOUN_SINGULAR_PROPER, "N", subject);
+		Token head = new Token(lemma, null, 1, CandcPtbPos.VERB_3SG_PRESENT, "S[dcl]\\NP", verb);
+		List<GrammaticalRelation> grs = new ArrayList<GrammaticalRelation>();
+		grs.add(new GrammaticalRelation(GrType.NON_CLAUSAL_SUBJECT, null, null, head, subj));
+		return new DependencyStructure(grs, new ArrayList<Token>(ImmutableList.of(subj, head)));
+	}
+}
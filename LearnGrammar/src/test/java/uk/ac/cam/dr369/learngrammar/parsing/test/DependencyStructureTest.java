@@ -2,8 +2,19 @@ package uk.ac.cam.dr369.learngrammar.parsing.test;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+
+import com.google.common.collect.ImmutableList;
+
 public class DependencyStructureTest {
 
 	@Test
@@ -31,6 +42,33 @@ public class DependencyStructureTest {
 		fail("Not yet implemented");
 	}
 
+	@Test
+	public void testSubstituteEach() {
+		// Lemmas given, so nothing is looked up in WordNet
+		Token john = new Token("John", null, 0, CandcPtbPos.NOUN_SINGULAR_PROPER, "N", "John");
+		Token eats = new Token("eat", null, 1, CandcPtbPos.VERB_3SG_PRESENT, "(S[dcl]\\NP)/NP", "eats");
+		Token cake = new Token("cake", null, 2, CandcPtbPos.NOUN_SINGULAR_OR_MASS, "N", "cake");
+		List<GrammaticalRelation> grs = new ArrayList<GrammaticalRelation>();
+		grs.add(new GrammaticalRelation(GrType.NON_CLAUSAL_SUBJECT, null, null, eats, john));
+		grs.add(new GrammaticalRelation(GrType.DIRECT_OBJECT, null, null, eats, cake));
+		List<Token> tokens = new ArrayList<Token>(ImmutableList.of(john, eats, cake));
+		DependencyStructure ds = new DependencyStructure(grs, tokens);
+
+		List<Token> replacements = ImmutableList.of(
+				new Token("devour", null, 7, CandcPtbPos.VERB_3SG_PRESENT, "(S[dcl]\\NP)/NP", "devours"),
+				new Token("consume", null, 7, CandcPtbPos.VERB_3SG_PRESENT, "(S[dcl]\\NP)/NP", "consumes"));
+		List<DependencyStructure> variants = ds.substituteEach(eats, replacements);
+		assertEquals(2, variants.size());
+		for (int i = 0; i < replacements.size(); i++) {
+			DependencyStructure expected = ds.substitute(eats, replacements.get(i));
+			assertEquals(expected, variants.get(i));
+			assertEquals(expected.getSentence(), variants.get(i).getSentence());
+			assertEquals(1, variants.get(i).getTokens().get(1).getIndex());
+		}
+		assertEquals("John eats cake", ds.getSentence()); // original untouched
+		assertTrue(ds.substituteEach(replacements.get(0), replacements).isEmpty());
+	}
+
 	@Test
 	public void testGetSentence() {
 		fail("Not yet implemented");
@@ -41,6 +79,26 @@ public class DependencyStructureTest {
 		fail("Not yet implemented");
 	}
 
+	@Test
+	public void testGetTokensView() {
+		Token john = new Token("John", null, 0, CandcPtbPos.NOUN_SINGULAR_PROPER, "N", "John");
+		Token sleeps = new Token("sleep", null, 1, CandcPtbPos.VERB_3SG_PRESENT, "S[dcl]\\NP", "sleeps");
+		List<GrammaticalRelation> grs = new ArrayList<GrammaticalRelation>();
+		grs.add(new GrammaticalRelation(GrType.NON_CLAUSAL_SUBJECT, null, null, sleeps, john));
+		DependencyStructure ds = new DependencyStructure(grs, new ArrayList<Token>(ImmutableList.of(john, sleeps)));
+
+		List<Token> view = ds.getTokensView();
+		assertEquals(ds.getTokens(), view);
+		assertSame("Not copied", view.get(1), ds.getTokensView().get(1));
+		assertNotSame(view.get(1), ds.getTokens().get(1));
+		try {
+			view.remove(0);
+			fail("View is modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testGetTokensBoolean() {
 		fail("Not yet implemented");
@@ -0,0 +1,44 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.parsing.FeatureFilter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class FeatureFilterTest {
+	private static final List<GrammaticalRelation> GRS = ImmutableList.of(
+			new GrammaticalRelation(GrType.NON_CLAUSAL_MODIFIER, null, null, null, null),
+			new GrammaticalRelation(null, null, "Null-1", null, null));
+
+	@Test
+	public void testKeys() {
+		Set<String> structureKeys = FeatureFilter.keys(ImmutableList.<Token>of(), GRS, false);
+		assertEquals(ImmutableSet.of("gr:"+GrType.NON_CLAUSAL_MODIFIER), structureKeys);
+		
+		Set<String> sentenceKeys = FeatureFilter.keys(ImmutableList.<Token>of(), GRS, true);
+		assertEquals(GrType.NON_CLAUSAL_MODIFIER.ancestors().size(), sentenceKeys.size());
+		assertTrue(sentenceKeys.contains("gr:"+GrType.ARGUMENT_MODIFIER));
+	}
+
+	@Test
+	public void testMightContainAll() {
+		FeatureFilter filter = FeatureFilter.of(ImmutableList.<Token>of(), GRS);
+		// no false negatives: structures with a more general GR type can match
+		for (GrType ancestor : GrType.NON_CLAUSAL_MODIFIER.ancestors()) {
+			assertTrue(filter.mightContainAll(ImmutableSet.of("gr:"+ancestor)));
+		}
+		assertTrue(filter.mightContainAll(ImmutableSet.<String>of()));
+	}
+
+}
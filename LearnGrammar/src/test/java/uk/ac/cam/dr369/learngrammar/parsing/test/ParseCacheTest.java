@@ -0,0 +1,106 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.parsing.ParseCache;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class ParseCacheTest {
+	private File directory;
+
+	@Before
+	public void createDirectory() {
+		directory = Files.createTempDir();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testGetPut() {
+		ParseCache cache = new ParseCache(directory, 10);
+		assertNull(cache.get("candc", "John eats cake"));
+		cache.put("candc", "John eats cake", parse("John", "eats", "cake"));
+		assertEquals("John eats cake", cache.get("candc", "John eats cake").getSentence());
+		assertNull(cache.get("rasp", "John eats cake")); // other parser
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testPersistent() {
+		new ParseCache(directory, 10).put("candc", "Mary eats pie", parse("Mary", "eats", "pie"));
+		ParseCache reopened = new ParseCache(directory, 10);
+		assertEquals(1, reopened.size());
+		assertEquals("Mary eats pie", reopened.get("candc", "Mary eats pie").getSentence());
+	}
+
+	@Test
+	public void testLruEviction() {
+		ParseCache cache = new ParseCache(directory, 2);
+		cache.put("candc", "one", parse("John", "eats", "cake"));
+		cache.put("candc", "two", parse("John", "eats", "cake"));
+		assertNotNull(cache.get("candc", "one")); // now 'two' is least recently used
+		cache.put("candc", "three", parse("John", "eats", "cake"));
+		assertEquals(2, cache.size());
+		assertEquals(2, directory.listFiles().length);
+		assertNotNull(cache.get("candc", "one"));
+		assertNull(cache.get("candc", "two"));
+		assertNotNull(cache.get("candc", "three"));
+	}
+
+	@Test
+	public void testDirectoryCreatedOnFirstPut() {
+		File subdirectory = new File(directory, "parses");
+		ParseCache cache = new ParseCache(subdirectory, 10);
+		assertNull(cache.get("candc", "John eats cake"));
+		assertFalse(subdirectory.exists());
+		cache.put("candc", "John eats cake", parse("John", "eats", "cake"));
+		assertEquals(1, subdirectory.listFiles().length);
+		for (File file : subdirectory.listFiles()) {
+			file.delete();
+		}
+		subdirectory.delete();
+	}
+
+	@Test
+	public void testUnreadableFileIsMiss() throws IOException {
+		ParseCache cache = new ParseCache(directory, 10);
+		cache.put("candc", "John eats cake", parse("John", "eats", "cake"));
+		Files.write("not a parse", directory.listFiles()[0], Charsets.UTF_8);
+		assertNull(cache.get("candc", "John eats cake"));
+	}
+
+	private static DependencyStructure parse(String subject, String verb, String object) {
+		// Lemmas given, so nothing is looked up in WordNet
+		Token s = new Token(subject, null, 0, CandcPtbPos.NOUN_SINGULAR_PROPER, "N", subject);
+		Token v = new Token(verb, null, 1, CandcPtbPos.VERB_3SG_PRESENT, "(S[dcl]\\NP)/NP", verb);
+		Token o = new Token(object, null, 2, CandcPtbPos.NOUN_SINGULAR_OR_MASS, "N", object);
+		return new DependencyStructure(Lists.<GrammaticalRelation>newArrayList(
+				new GrammaticalRelation(GrType.NON_CLAUSAL_SUBJECT, null, null, v, s),
+				new GrammaticalRelation(GrType.DIRECT_OBJECT, null, null, v, o)), Lists.newArrayList(s, v, o));
+	}
+}
@@ -0,0 +1,100 @@
+package uk.ac.cam.dr369.learngrammar.parsing.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.Claws2Pos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.FlagSubtype;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.TokenSubtype;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.parsing.RaspOutputReader;
+
+public class RaspOutputReaderTest {
+	private static final String OUTPUT =
+		"\n" +
+		"^ The cat sat .\n" +
+		"^ It was given to me .\n" +
+		"%%\n" +
+		"(|The:1_AT| |cat:2_NN1| |sit+ed:3_VVD| |.:4_.|) 1 ; (-10.2)\n" +
+		"gr-list: 1\n" +
+		"(|ncsubj| |sit+ed:3_VVD| |cat:2_NN1| _)\n" +
+		"(|det| |cat:2_NN1| |The:1_AT|)\n" +
+		"\n" +
+		"(|It:1_PPH1| |be+ed:2_VBDZ| |give+en:3_VVN| |to:4_II| |I:5_PPIO1| |.:6_.|) 1 ; (-15.0)\n" +
+		"gr-list: 1\n" +
+		"(|passive| |give+en:3_VVN|)\n" +
+		"(|ncmod| _ |give+en:3_VVN| |to:4_II|)\n" +
+		"(|xcomp| |to| |give+en:3_VVN| |I:5_PPIO1|)\n" +
+		"(|ncmod| |to:4_II| |give+en:3_VVN| |I:5_PPIO1|)\n";
+
+	@Test
+	public void testTokens() throws Exception {
+		DependencyStructure ds = new RaspOutputReader(new StringReader(OUTPUT)).next();
+		List<Token> tokens = ds.getTokens();
+		assertEquals(4, tokens.size());
+		Token sat = tokens.get(2);
+		assertEquals("sit", sat.getLemma());
+		assertEquals("ed", sat.getSuffix());
+		assertEquals("sat", sat.getWord());
+		assertEquals(2, sat.getIndex());
+		assertSame(Claws2Pos.VERB_PAST_TENSE, sat.pos());
+		assertEquals(".", tokens.get(3).getLemma());
+		assertEquals("", tokens.get(3).getSuffix());
+		assertSame(Claws2Pos.FULL_STOP, tokens.get(3).pos());
+	}
+
+	@Test
+	public void testGrs() throws Exception {
+		RaspOutputReader reader = new RaspOutputReader(new StringReader(OUTPUT));
+		List<GrammaticalRelation> grs = reader.next().getGrs();
+		assertEquals(2, grs.size());
+		assertSame(GrType.NON_CLAUSAL_SUBJECT, grs.get(0).type());
+		assertEquals("sat", grs.get(0).getHead().getWord());
+		assertEquals("cat", grs.get(0).getDependent().getWord());
+		assertEquals("_", grs.get(0).getInitialGrValue());
+		assertNull(grs.get(0).getSubtype());
+		assertEquals("", grs.get(1).getInitialGrValue());
+
+		grs = reader.next().getGrs();
+		assertEquals(4, grs.size());
+		assertSame(GrType.PASSIVE, grs.get(0).type());
+		assertEquals("given", grs.get(0).getHead().getWord());
+		assertNull(grs.get(0).getDependent());
+		assertNull(grs.get(1).getSubtype()); // _
+		assertEquals("to", grs.get(1).getDependent().getWord());
+		assertEquals("to", ((FlagSubtype) grs.get(2).getSubtype()).flag());
+		assertEquals("me", grs.get(2).getDependent().getWord());
+		assertEquals("to", ((TokenSubtype) grs.get(3).getSubtype()).token().getWord());
+
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void testLineProcessor() throws Exception {
+		RaspOutputReader reader = new RaspOutputReader();
+		for (String line : OUTPUT.split("\n")) {
+			assertTrue(reader.processLine(line));
+		}
+		List<DependencyStructure> dses = reader.getResult();
+		assertEquals(2, dses.size());
+		assertEquals(4, dses.get(0).getTokens().size());
+		assertEquals(4, dses.get(1).getGrs().size());
+	}
+
+	@Test
+	public void testReadAll() throws Exception {
+		List<DependencyStructure> dses = new RaspOutputReader(new StringReader(OUTPUT)).readAll();
+		assertEquals(2, dses.size());
+		assertEquals(6, dses.get(1).getTokens().size());
+	}
+}
@@ -0,0 +1,95 @@
+package uk.ac.cam.dr369.learngrammar.semantics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.Pos;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.CandcSyntacticParser;
+import uk.ac.cam.dr369.learngrammar.parsing.RaspSyntacticParser;
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetSemanticAnalyser;
+
+/**
+ * Hammers the shared analysers and parsers from a thread pool. Every thread must see the same instances, and lemmatisation must give
+ * the same answers as it does on a single thread.
+ */
+public class ConcurrencyStressTest {
+	private static final int THREADS = 16;
+	private static final int ROUNDS = 2000;
+
+	private static final String[] WORDS = {"thought", "ran", "eats", "taking", "gave", "mice", "cows", "children", "houses", "geese"};
+	private static final Pos[] POS_TAGS = {
+		CandcPtbPos.VERB_PAST_TENSE, CandcPtbPos.VERB_PAST_TENSE, CandcPtbPos.VERB_3SG_PRESENT,
+		CandcPtbPos.VERB_GERUND_OR_PRESENT_PARTICIPLE, CandcPtbPos.VERB_PAST_TENSE, CandcPtbPos.NOUN_PLURAL_COMMON,
+		CandcPtbPos.NOUN_PLURAL_COMMON, CandcPtbPos.NOUN_PLURAL_COMMON, CandcPtbPos.NOUN_PLURAL_COMMON, CandcPtbPos.NOUN_PLURAL_COMMON};
+
+	@Test
+	public void testGetInstances() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Object[]>> results = run(new Callable<Object[]>() {
+			@Override
+			public Object[] call() throws Exception {
+				start.await();
+				return new Object[] {
+					WordnetSemanticAnalyser.getInstance(), CandcSyntacticParser.getInstance(), RaspSyntacticParser.getInstance()};
+			}
+		}, start);
+		Object[] expected = results.get(0).get();
+		for (Future<Object[]> result : results) {
+			Object[] instances = result.get();
+			for (int i = 0; i < expected.length; i++)
+				assertSame(expected[i], instances[i]);
+		}
+	}
+
+	@Test
+	public void testLemmatise() throws Exception {
+		final List<String> expected = lemmatiseAll();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Object[]>> results = run(new Callable<Object[]>() {
+			@Override
+			public Object[] call() throws Exception {
+				start.await();
+				for (int round = 0; round < ROUNDS; round++)
+					assertEquals(expected, lemmatiseAll());
+				return null;
+			}
+		}, start);
+		for (Future<Object[]> result : results)
+			result.get(); // rethrows any assertion failure
+	}
+
+	private static List<String> lemmatiseAll() {
+		List<String> lemmas = new ArrayList<String>();
+		for (int i = 0; i < WORDS.length; i++)
+			lemmas.add(new Token(null, null, i, POS_TAGS[i], null, WORDS[i]).getLemma());
+		return lemmas;
+	}
+
+	private static List<Future<Object[]>> run(Callable<Object[]> task, CountDownLatch start) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<Object[]>> results = new ArrayList<Future<Object[]>>();
+		try {
+			for (int i = 0; i < THREADS; i++)
+				results.add(pool.submit(task));
+			start.countDown(); // release every thread at once
+		}
+		finally {
+			pool.shutdown();
+		}
+		pool.awaitTermination(5, TimeUnit.MINUTES);
+		return results;
+	}
+}
@@ -0,0 +1,84 @@
+package uk.ac.cam.dr369.learngrammar.semantics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.Pos;
+import uk.ac.cam.dr369.learngrammar.semantics.Inflector;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import edu.mit.jwi.item.POS;
+
+public class InflectorTest {
+	private File table;
+
+	/** As if SimpleNLG choked on one lemma. */
+	private final Inflector inflector = new Inflector(1000) {
+		@Override
+		protected String findInflection(Pos pos, String lemma) {
+			if (lemma.equals("choke"))
+				throw new IllegalArgumentException("Cannot inflect " + lemma);
+			return super.findInflection(pos, lemma);
+		}
+	};
+
+	@Before
+	public void createTable() throws IOException {
+		table = File.createTempFile("inflections", ".tsv");
+	}
+
+	@After
+	public void deleteTable() {
+		table.delete();
+	}
+
+	@Test
+	public void testWriteAndPreloadInflections() throws Exception {
+		Map<POS, Iterator<String>> lemmas = ImmutableMap.of(
+				POS.VERB, ImmutableList.of("eat", "choke", "look_up", "walk").iterator(),
+				POS.NOUN, ImmutableList.of("mouse", "cow").iterator());
+		assertEquals(10, inflector.writeInflections(table, lemmas)); // four forms each for two verbs, one each for two nouns
+		List<String> lines = Files.readLines(table, Charsets.UTF_8);
+		assertEquals(10, lines.size());
+		assertTrue(lines.contains("VBD\teat\tate"));
+		assertTrue(lines.contains("NNS\tmouse\tmice"));
+		for (String line : lines) {
+			assertFalse(line, line.contains("choke") || line.contains("look_up"));
+		}
+		assertEquals("Writing doesn't touch the cache", 0, inflector.getStats().requestCount());
+
+		Inflector reader = new Inflector(1000);
+		assertEquals(10, reader.preloadInflections(table));
+		assertEquals("ate", reader.inflect(CandcPtbPos.VERB_PAST_TENSE, "eat"));
+		assertEquals("walks", reader.inflect(CandcPtbPos.VERB_3SG_PRESENT, "walk"));
+		assertEquals("cows", reader.inflect(CandcPtbPos.NOUN_PLURAL_COMMON, "cow"));
+		assertEquals(3, reader.getStats().hitCount());
+		assertEquals(0, reader.getStats().missCount());
+
+		assertEquals("runs", reader.inflect(CandcPtbPos.VERB_3SG_PRESENT, "run")); // not in the table
+		assertEquals("runs", reader.inflect(CandcPtbPos.VERB_3SG_PRESENT, "run"));
+		assertEquals(4, reader.getStats().hitCount());
+		assertEquals(1, reader.getStats().missCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInflectUninflectable() {
+		inflector.inflect(CandcPtbPos.DETERMINER, "the");
+	}
+}
@@ -0,0 +1,109 @@
+package uk.ac.cam.dr369.learngrammar.semantics.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.model.CandcPtbPos;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation;
+import uk.ac.cam.dr369.learngrammar.model.GrammaticalRelation.GrType;
+import uk.ac.cam.dr369.learngrammar.model.Token;
+import uk.ac.cam.dr369.learngrammar.parsing.DependencyStructure;
+import uk.ac.cam.dr369.learngrammar.semantics.SynonymVariantGenerator;
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetSemanticAnalyser;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.mit.jwi.item.IWord;
+
+public class SynonymVariantGeneratorTest {
+
+	/** Variants come out as they would from finding each word's sense and synonyms afresh - the first time, and from the caches. */
+	@Test
+	public void testGenerate() {
+		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+		SynonymVariantGenerator generator = new SynonymVariantGenerator(wnsa);
+		List<DependencyStructure> sentences = ImmutableList.of(
+				sentence("She", "be", "is", CandcPtbPos.VERB_3SG_PRESENT, "happy", CandcPtbPos.ADJECTIVE),
+				sentence("They", "walk", "walked", CandcPtbPos.VERB_PAST_TENSE, "quickly", CandcPtbPos.ADVERB),
+				sentence("He", "run", "ran", CandcPtbPos.VERB_PAST_TENSE, "quickly", CandcPtbPos.ADVERB)); // same sense, other sentence
+		boolean anyVariants = false;
+		for (int pass = 0; pass < 2; pass++) {
+			for (DependencyStructure sentence : sentences) {
+				List<String> expected = uncachedVariants(wnsa, sentence);
+				assertEquals("Pass " + pass, expected, sentences(generator.generate(sentence)));
+				anyVariants |= !expected.isEmpty();
+			}
+		}
+		assertTrue(anyVariants);
+	}
+
+	@Test
+	public void testGetReplacements() {
+		SynonymVariantGenerator generator = new SynonymVariantGenerator();
+		DependencyStructure sentence = sentence("They", "walk", "walked", CandcPtbPos.VERB_PAST_TENSE, "quickly", CandcPtbPos.ADVERB);
+		Token quickly = sentence.getTokens().get(2);
+		List<String> words = new ArrayList<String>();
+		for (Token replacement : generator.getReplacements(quickly)) {
+			assertEquals(quickly.getIndex(), replacement.getIndex());
+			words.add(replacement.getWord());
+		}
+		assertTrue(words.toString(), words.contains("rapidly"));
+		assertFalse(words.contains("quickly"));
+		assertTrue("Pronoun", generator.getReplacements(sentence.getTokens().get(0)).isEmpty());
+	}
+
+	/** As SynonymVariantGenerator, but through WordnetSemanticAnalyser's own, uncached, sense and synonym lookups. */
+	private static List<String> uncachedVariants(WordnetSemanticAnalyser wnsa, DependencyStructure sentence) {
+		List<String> variants = new ArrayList<String>();
+		for (Token token : sentence.getTokens()) {
+			if (!token.isVerb() && !token.isAdjective() && !token.isAdverb())
+				continue; // no common nouns in these sentences
+			if (wnsa.getWords(token).isEmpty())
+				continue;
+			IWord sense = wnsa.findSense(token, sentence.getSentence());
+			if (sense == null)
+				continue;
+			for (IWord synonym : wnsa.getSynonyms(token, sense)) {
+				if (synonym.getLemma().indexOf('_') != -1)
+					continue;
+				Token replacement;
+				try {
+					replacement = wnsa.reinflect(token, synonym);
+				}
+				catch (IllegalArgumentException iae) {
+					continue;
+				}
+				if (!replacement.getWord().equalsIgnoreCase(token.getWord()))
+					variants.add(sentence.substitute(token, replacement).getSentence());
+			}
+		}
+		return variants;
+	}
+
+	private static List<String> sentences(List<DependencyStructure> variants) {
+		List<String> sentences = new ArrayList<String>();
+		for (DependencyStructure variant : variants) {
+			sentences.add(variant.getSentence());
+		}
+		return sentences;
+	}
+
+	/** Pronoun, verb and a modifier of the verb. Lemmas given, so only WordNet's senses and synonyms are looked up. */
+	private static DependencyStructure sentence(String pronoun, String verbLemma, String verb, CandcPtbPos verbPos,
+			String modifier, CandcPtbPos modifierPos) {
+		Token subj = new Token(pronoun.toLowerCase(), null, 0, CandcPtbPos.PRONOUN_PERSONAL, "NP", pronoun);
+		Token head = new Token(verbLemma, null, 1, verbPos, "(S[dcl]\\NP)/(S[adj]\\NP)", verb);
+		Token mod = new Token(modifier, null, 2, modifierPos, "S[adj]\\NP", modifier);
+		List<GrammaticalRelation> grs = new ArrayList<GrammaticalRelation>();
+		grs.add(new GrammaticalRelation(GrType.NON_CLAUSAL_SUBJECT, null, null, head, subj));
+		grs.add(new GrammaticalRelation(modifierPos == CandcPtbPos.ADJECTIVE ? GrType.X_COMPLEMENT : GrType.NON_CLAUSAL_MODIFIER,
+				null, null, head, mod));
+		return new DependencyStructure(grs, new ArrayList<Token>(ImmutableList.of(subj, head, mod)));
+	}
+}
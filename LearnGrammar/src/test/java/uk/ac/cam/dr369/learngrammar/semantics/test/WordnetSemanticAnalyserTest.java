@@ -2,8 +2,22 @@ package uk.ac.cam.dr369.learngrammar.semantics.test;
 
 import static org.junit.Assert.*;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.junit.Test;
 
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetSemanticAnalyser;
+
+import edu.mit.jwi.IDictionary;
+import edu.mit.jwi.item.ISynset;
+import edu.mit.jwi.item.ISynsetID;
+import edu.mit.jwi.item.IWord;
+import edu.mit.jwi.item.POS;
+import edu.mit.jwi.item.Pointer;
+
 public class WordnetSemanticAnalyserTest {
 
 	@Test
@@ -11,6 +25,14 @@ public class WordnetSemanticAnalyserTest {
 		fail("Not yet implemented");
 	}
 
+	/** awaitLoaded() waits for the whole load, rather than returning as soon as a load is under way. */
+	@Test
+	public void testAwaitLoaded() throws Exception {
+		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+		wnsa.awaitLoaded();
+		assertTrue(wnsa.isLoaded());
+	}
+
 	@Test
 	public void testLemmatise() {
 		fail("Not yet implemented");
@@ -38,12 +60,55 @@ public class WordnetSemanticAnalyserTest {
 
 	@Test
 	public void testGetHypernyms() {
-		fail("Not yet implemented");
+		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+		IWord walk = firstSense(wnsa.getDictionary(), "walk");
+		long hits = wnsa.getRelationCacheStats().hitCount();
+		Map<ISynset, List<IWord>> hypernyms = wnsa.getHypernyms(walk);
+		assertEquals(related(wnsa.getDictionary(), walk.getSynset().getID(), Pointer.HYPERNYM, 1), ids(hypernyms.keySet()));
+		for (Map.Entry<ISynset, List<IWord>> hypernym : hypernyms.entrySet()) {
+			assertEquals(hypernym.getKey().getWords(), hypernym.getValue());
+		}
+		assertEquals(hypernyms, wnsa.getHypernyms(walk));
+		assertTrue("Cached", wnsa.getRelationCacheStats().hitCount() > hits);
 	}
 
 	@Test
 	public void testGetHyponyms() {
-		fail("Not yet implemented");
+		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+		IWord travel = firstSense(wnsa.getDictionary(), "travel");
+		Map<ISynset, List<IWord>> hyponyms = wnsa.getHyponyms(travel);
+		assertEquals(related(wnsa.getDictionary(), travel.getSynset().getID(), Pointer.HYPONYM, 1), ids(hyponyms.keySet()));
+		assertTrue(hyponyms.keySet().contains(firstSense(wnsa.getDictionary(), "walk").getSynset()));
+	}
+
+	/** Closures at each depth match an uncached walk up the hypernym chain: walk, travel, ... */
+	@Test
+	public void testGetHypernymClosure() {
+		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+		IDictionary dictionary = wnsa.getDictionary();
+		ISynsetID walk = firstSense(dictionary, "walk").getSynset().getID();
+		ISynsetID travel = firstSense(dictionary, "travel").getSynset().getID();
+		assertTrue(wnsa.getHypernymClosure(walk, 0).isEmpty());
+		assertTrue(wnsa.getHypernymClosure(walk, 1).contains(travel));
+		for (int depth = 0; depth <= 5; depth++) {
+			assertEquals("Depth " + depth, related(dictionary, walk, Pointer.HYPERNYM, depth), wnsa.getHypernymClosure(walk, depth));
+		}
+		Set<ISynsetID> all = related(dictionary, walk, Pointer.HYPERNYM, 20);
+		assertEquals(all, wnsa.getHypernymClosure(walk, 20));
+		assertEquals("Top of the chain", all, wnsa.getHypernymClosure(walk, 21));
+		assertFalse(all.contains(walk));
+	}
+
+	@Test
+	public void testGetHyponymClosure() {
+		WordnetSemanticAnalyser wnsa = WordnetSemanticAnalyser.getInstance();
+		IDictionary dictionary = wnsa.getDictionary();
+		ISynsetID travel = firstSense(dictionary, "travel").getSynset().getID();
+		assertTrue(wnsa.getHyponymClosure(travel, 0).isEmpty());
+		for (int depth = 1; depth <= 3; depth++) {
+			assertEquals("Depth " + depth, related(dictionary, travel, Pointer.HYPONYM, depth), wnsa.getHyponymClosure(travel, depth));
+		}
+		assertTrue(wnsa.getHyponymClosure(travel, 1).contains(firstSense(dictionary, "walk").getSynset().getID()));
 	}
 
 	@Test
@@ -56,4 +121,28 @@ public class WordnetSemanticAnalyserTest {
 		fail("Not yet implemented");
 	}
 
+	private static IWord firstSense(IDictionary dictionary, String verb) {
+		return dictionary.getWord(dictionary.getIndexWord(verb, POS.VERB).getWordIDs().get(0));
+	}
+
+	/** Uncached: synsets reached by following <code>pointer</code> up to <code>depth</code> times. */
+	private static Set<ISynsetID> related(IDictionary dictionary, ISynsetID synset, Pointer pointer, int depth) {
+		Set<ISynsetID> closure = new HashSet<ISynsetID>();
+		if (depth > 0) {
+			for (ISynsetID related : dictionary.getSynset(synset).getRelatedSynsets(pointer)) {
+				closure.add(related);
+				closure.addAll(related(dictionary, related, pointer, depth - 1));
+			}
+		}
+		return closure;
+	}
+
+	private static Set<ISynsetID> ids(Set<ISynset> synsets) {
+		Set<ISynsetID> ids = new HashSet<ISynsetID>();
+		for (ISynset synset : synsets) {
+			ids.add(synset.getID());
+		}
+		return ids;
+	}
+
 }
@@ -2,8 +2,15 @@ package uk.ac.cam.dr369.learngrammar.semantics.test;
 
 import static org.junit.Assert.*;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.junit.Test;
 
+import uk.ac.cam.dr369.learngrammar.semantics.WordnetVerbFrame;
+
+import com.google.common.collect.ImmutableSet;
+
 public class WordnetVerbFrameTest {
 
 	@Test
@@ -31,6 +38,24 @@ public class WordnetVerbFrameTest {
 		fail("Not yet implemented");
 	}
 
+	@Test
+	public void testMask() {
+		Set<WordnetVerbFrame> frames = EnumSet.of(WordnetVerbFrame.values()[0], WordnetVerbFrame.SOMETHING_VERBS_SOMETHING_11,
+				WordnetVerbFrame.values()[WordnetVerbFrame.values().length - 1]);
+		long mask = WordnetVerbFrame.toMask(frames);
+		assertEquals(3, Long.bitCount(mask));
+		assertEquals(frames, WordnetVerbFrame.fromMask(mask));
+		assertEquals(0L, WordnetVerbFrame.toMask(ImmutableSet.<WordnetVerbFrame>of()));
+		assertTrue((mask & WordnetVerbFrame.toMask(ImmutableSet.of(WordnetVerbFrame.SOMETHING_VERBS_SOMETHING_11))) != 0);
+	}
+
+	@Test
+	public void testForDescription() {
+		for (WordnetVerbFrame frame : WordnetVerbFrame.values())
+			assertSame(frame, WordnetVerbFrame.forDescription(frame.getDescription()));
+		assertNull(WordnetVerbFrame.forDescription("Nobody ----s nothing"));
+	}
+
 	@Test
 	public void testGetConstraints() {
 		fail("Not yet implemented");
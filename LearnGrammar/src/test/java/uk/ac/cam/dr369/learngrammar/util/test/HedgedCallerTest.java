@@ -0,0 +1,102 @@
+package uk.ac.cam.dr369.learngrammar.util.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.util.HedgedCaller;
+
+public class HedgedCallerTest {
+	@Test
+	public void testFastPrimaryNotHedged() throws Exception {
+		HedgedCaller hedger = new HedgedCaller(95, 10, 500, 100);
+		assertEquals("primary", hedger.call(answer("primary", 0), answer("backup", 0)));
+		assertEquals(1, hedger.getStats().getCallCount());
+		assertEquals(0, hedger.getStats().getHedgeCount());
+	}
+
+	@Test
+	public void testSlowPrimaryHedged() throws Exception {
+		HedgedCaller hedger = new HedgedCaller(95, 10, 50, 100);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		assertEquals("backup", hedger.call(answer("primary", 5000, interrupted), answer("backup", 0)));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertTrue("Loser cancelled", interrupted.await(1, TimeUnit.SECONDS));
+		assertEquals(1, hedger.getStats().getHedgeCount());
+		assertEquals(1, hedger.getStats().getHedgeWinCount());
+	}
+
+	@Test
+	public void testPrimaryStillWins() throws Exception {
+		HedgedCaller hedger = new HedgedCaller(95, 10, 50, 100);
+		assertEquals("primary", hedger.call(answer("primary", 200), answer("backup", 5000)));
+		assertEquals(1, hedger.getStats().getHedgeCount());
+		assertEquals(0, hedger.getStats().getHedgeWinCount());
+	}
+
+	@Test
+	public void testFailures() throws Exception {
+		HedgedCaller hedger = new HedgedCaller(95, 10, 50, 100);
+		assertEquals("backup", hedger.call(failure("primary", 200), answer("backup", 300))); // primary fails after the hedge
+		try {
+			hedger.call(failure("primary", 0), answer("backup", 0)); // fails before the hedge
+			fail("Expected the primary's failure");
+		} catch (IOException e) {
+			assertEquals("primary", e.getMessage());
+		}
+		try {
+			hedger.call(failure("primary", 100), failure("backup", 200));
+			fail("Expected a failure");
+		} catch (IOException e) {
+			assertEquals("backup", e.getMessage());
+		}
+		assertEquals(2, hedger.getStats().getHedgeCount());
+	}
+
+	@Test
+	public void testDelayFollowsLatencies() throws Exception {
+		HedgedCaller hedger = new HedgedCaller(50, 1, 1000, 40);
+		assertEquals(1000, hedger.getDelayMillis()); // too few latencies yet
+		for (int i = 0; i < 40; i++) {
+			hedger.call(answer("primary", 20), answer("backup", 0));
+		}
+		long delay = hedger.getDelayMillis();
+		assertTrue("Delay " + delay, delay >= 20 && delay < 200);
+	}
+
+	private static Callable<String> answer(String result, long delayMillis) {
+		return answer(result, delayMillis, new CountDownLatch(1));
+	}
+
+	private static Callable<String> answer(final String result, final long delayMillis, final CountDownLatch interrupted) {
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				try {
+					Thread.sleep(delayMillis);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return result;
+			}
+		};
+	}
+
+	private static Callable<String> failure(final String message, final long delayMillis) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				Thread.sleep(delayMillis);
+				throw new IOException(message);
+			}
+		};
+	}
+}
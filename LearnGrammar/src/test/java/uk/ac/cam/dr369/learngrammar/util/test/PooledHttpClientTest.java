@@ -0,0 +1,180 @@
+package uk.ac.cam.dr369.learngrammar.util.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.util.PooledHttpClient;
+import uk.ac.cam.dr369.learngrammar.util.PooledHttpClient.HttpStatusException;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/** Runs the client against a stub server on localhost. */
+public class PooledHttpClientTest {
+	private HttpServer server;
+	private String url;
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int request = requests.incrementAndGet();
+				int now = running.incrementAndGet();
+				while (maxRunning.get() < now)
+					maxRunning.compareAndSet(maxRunning.get(), now);
+				clientPorts.add(exchange.getRemoteAddress().getPort());
+				try {
+					String query = exchange.getRequestURI().getQuery();
+					if (query.startsWith("status=")) {
+						int status = Integer.parseInt(query.substring("status=".length(), query.indexOf(';')));
+						int failures = Integer.parseInt(query.substring(query.indexOf(';') + 1));
+						if (request <= failures) {
+							respond(exchange, status, "failed");
+							return;
+						}
+					} else if (query.startsWith("sleep=")) {
+						Thread.sleep(Long.parseLong(query.substring("sleep=".length())));
+					}
+					respond(exchange, 200, "(ncsubj " + query + ")\n<c> " + query);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				finally {
+					running.decrementAndGet();
+				}
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/?";
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(Charsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testGet() throws Exception {
+		PooledHttpClient client = new PooledHttpClient(2, 1000, 1000, 0, 0);
+		assertEquals("(ncsubj hello)\n<c> hello\n", client.get(url + "hello"));
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		PooledHttpClient client = new PooledHttpClient(1, 1000, 1000, 0, 0);
+		for (int i = 0; i < 20; i++) {
+			client.get(url + "sentence" + i);
+		}
+		assertEquals(20, requests.get());
+		assertEquals(1, clientPorts.size()); // one connection, reused
+	}
+
+	@Test
+	public void testRetryServerError() throws Exception {
+		PooledHttpClient client = new PooledHttpClient(1, 1000, 1000, 2, 10);
+		assertEquals("(ncsubj status=503;2)\n<c> status=503;2\n", client.get(url + "status=503;2"));
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	public void testRetriesBounded() throws Exception {
+		PooledHttpClient client = new PooledHttpClient(1, 1000, 1000, 2, 10);
+		try {
+			client.get(url + "status=500;5");
+			fail("Expected failure");
+		} catch (HttpStatusException e) {
+			assertEquals(500, e.getStatus());
+		}
+		assertEquals(3, requests.get());
+	}
+
+	@Test
+	public void testClientErrorNotRetried() throws Exception {
+		PooledHttpClient client = new PooledHttpClient(1, 1000, 1000, 2, 10);
+		try {
+			client.get(url + "status=404;5");
+			fail("Expected failure");
+		} catch (HttpStatusException e) {
+			assertEquals(404, e.getStatus());
+		}
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void testReadTimeout() throws Exception {
+		PooledHttpClient client = new PooledHttpClient(1, 1000, 100, 1, 10);
+		try {
+			client.get(url + "sleep=1000");
+			fail("Expected timeout");
+		} catch (SocketTimeoutException e) {
+			// expected
+		}
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testConcurrencyCap() throws Exception {
+		final PooledHttpClient client = new PooledHttpClient(3, 1000, 5000, 0, 0);
+		ExecutorService threads = Executors.newFixedThreadPool(10);
+		try {
+			List<Future<String>> responses = new ArrayList<Future<String>>();
+			for (int i = 0; i < 30; i++) {
+				responses.add(threads.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return client.get(url + "sleep=20");
+					}
+				}));
+			}
+			for (Future<String> response : responses) {
+				response.get();
+			}
+			assertEquals(30, requests.get());
+			assertTrue(maxRunning.get() <= 3);
+		}
+		finally {
+			threads.shutdown();
+		}
+	}
+}
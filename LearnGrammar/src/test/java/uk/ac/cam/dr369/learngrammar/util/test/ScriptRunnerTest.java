@@ -0,0 +1,121 @@
+package uk.ac.cam.dr369.learngrammar.util.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.ac.cam.dr369.learngrammar.util.ScriptRunner;
+import uk.ac.cam.dr369.learngrammar.util.Utils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import com.google.common.io.LineProcessor;
+
+public class ScriptRunnerTest {
+	@Test
+	public void testInputOnStdin() throws Exception {
+		assertEquals("HELLO $(WORLD)\n", Utils.runScript(script("tr a-z A-Z\n"), "hello $(world)"));
+	}
+
+	@Test
+	public void testLargeInputAndOutput() throws Exception {
+		// Far more than a pipe holds, both ways
+		final String line = Strings.repeat("x", 1000);
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			input.append(line).append('\n');
+		}
+		int lines = ScriptRunner.run(script("cat; cat >&2 < /dev/null\n"), input.toString(), 30, TimeUnit.SECONDS,
+				new LineProcessor<Integer>() {
+			private int count;
+			@Override
+			public boolean processLine(String l) {
+				assertTrue(l.isEmpty() || l.equals(line));
+				count++;
+				return true;
+			}
+			@Override
+			public Integer getResult() {
+				return count;
+			}
+		});
+		assertEquals(2001, lines); // input's trailing newline, plus the one added
+	}
+
+	@Test
+	public void testStreamed() throws Exception {
+		// The first line arrives while the script is still running
+		final long start = System.currentTimeMillis();
+		List<Long> arrivals = ScriptRunner.run(script("echo one; sleep 1; echo two\n"), "", 10, TimeUnit.SECONDS,
+				new LineProcessor<List<Long>>() {
+			private final List<Long> arrivals = new ArrayList<Long>();
+			@Override
+			public boolean processLine(String line) {
+				arrivals.add(System.currentTimeMillis() - start);
+				return true;
+			}
+			@Override
+			public List<Long> getResult() {
+				return arrivals;
+			}
+		});
+		assertEquals(2, arrivals.size());
+		assertTrue(arrivals.get(1) - arrivals.get(0) >= 500);
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		try {
+			Utils.runScript(script("echo 'something went wrong' >&2; exit 3\n"), "");
+			fail("Expected failure");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("exited with 3"));
+			assertTrue(e.getMessage().contains("something went wrong"));
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		long start = System.currentTimeMillis();
+		try {
+			ScriptRunner.run(script("sleep 10 | cat\n"), "", 200, TimeUnit.MILLISECONDS, new ScriptRunner.StringLineProcessor());
+			fail("Expected timeout");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("timed out"));
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testStopEarly() throws Exception {
+		String first = ScriptRunner.run(script("echo first; sleep 10\n"), "", 10, TimeUnit.SECONDS, new LineProcessor<String>() {
+			private String first;
+			@Override
+			public boolean processLine(String line) {
+				first = line;
+				return false;
+			}
+			@Override
+			public String getResult() {
+				return first;
+			}
+		});
+		assertEquals("first", first);
+	}
+
+	private static String script(String body) throws IOException {
+		File script = File.createTempFile("script", ".sh");
+		script.deleteOnExit();
+		Files.write(body, script, Charsets.UTF_8);
+		return script.getPath();
+	}
+}